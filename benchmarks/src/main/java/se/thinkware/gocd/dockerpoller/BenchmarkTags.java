@@ -0,0 +1,37 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tag lists that look like what CI systems push: release versions, release
+ * candidates, per-build numbers, timestamps and git SHAs, in registry order.
+ */
+class BenchmarkTags {
+
+    static List<String> generate(int count) {
+        Random random = new Random(count);
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    tags.add(random.nextInt(4) + "." + random.nextInt(30) + "." + random.nextInt(100));
+                    break;
+                case 1:
+                    tags.add(random.nextInt(4) + "." + random.nextInt(30) + ".0-rc" + random.nextInt(10));
+                    break;
+                case 2:
+                    tags.add("build-" + random.nextInt(100000));
+                    break;
+                case 3:
+                    tags.add(String.format("2017%02d%02d%06d", 1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(240000)));
+                    break;
+                default:
+                    tags.add(String.format("%07x", random.nextInt(0x10000000)));
+                    break;
+            }
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,62 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionSinceMessage;
+import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * (De)serialization of the latest-revision-since message GoCD sends on every poll,
+ * and of the revision we answer with. Run with -prof gc for allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonUtilBenchmark {
+
+    static final String LATEST_REVISION_SINCE = "{"
+            + "\"repository-configuration\":{"
+            + "\"DOCKER_REGISTRY_URL\":{\"value\":\"http://registry.example.com/v2/\"},"
+            + "\"DOCKER_REGISTRY_NAME\":{\"value\":\"registry.example.com\"}},"
+            + "\"package-configuration\":{"
+            + "\"DOCKER_IMAGE\":{\"value\":\"backends/database-x\"},"
+            + "\"DOCKER_TAG_FILTER\":{\"value\":\"^[0-9.]+$\"}},"
+            + "\"previous-revision\":{"
+            + "\"revision\":\"1.2.3\","
+            + "\"timestamp\":\"2017-10-18T12:34:56.789Z\","
+            + "\"user\":\"docker\","
+            + "\"data\":{}}"
+            + "}";
+
+    private LatestPackageRevisionSinceMessage message;
+    private PackageRevisionMessage revision;
+
+    @Setup
+    public void setUp() {
+        message = JsonUtil.fromJsonString(LATEST_REVISION_SINCE, LatestPackageRevisionSinceMessage.class);
+        revision = new PackageRevisionMessage("1.2.4", new Date(), "docker", null, null);
+    }
+
+    @Benchmark
+    public LatestPackageRevisionSinceMessage fromJsonString() {
+        return JsonUtil.fromJsonString(LATEST_REVISION_SINCE, LatestPackageRevisionSinceMessage.class);
+    }
+
+    @Benchmark
+    public String toJsonString() {
+        return JsonUtil.toJsonString(message);
+    }
+
+    @Benchmark
+    public String revisionToJsonString() {
+        return JsonUtil.toJsonString(revision);
+    }
+}
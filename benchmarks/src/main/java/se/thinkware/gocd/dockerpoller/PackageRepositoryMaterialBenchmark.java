@@ -0,0 +1,74 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full latest-revision-since request through PackageRepositoryMaterial.handle(),
+ * with the registry replaced by a MockHttpTransport serving a canned tag list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackageRepositoryMaterialBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int tagCount;
+
+    private PackageRepositoryMaterial material;
+    private DefaultGoPluginApiRequest request;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{\"name\":\"backends/database-x\",\"tags\":[");
+        String separator = "";
+        for (String tag : BenchmarkTags.generate(tagCount)) {
+            json.append(separator).append('"').append(tag).append('"');
+            separator = ",";
+        }
+        String tagList = json.append("]}").toString();
+
+        material = new PackageRepositoryMaterial(new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.setContent(tagList);
+                        return response;
+                    }
+                };
+            }
+        });
+
+        request = new DefaultGoPluginApiRequest(
+                PackageRepositoryMaterial.EXTENSION,
+                "1.0",
+                PackageRepositoryMaterial.REQUEST_LATEST_PACKAGE_REVISION_SINCE);
+        request.setRequestBody(JsonUtilBenchmark.LATEST_REVISION_SINCE);
+    }
+
+    @Benchmark
+    public GoPluginApiResponse latestRevisionSince() {
+        return material.handle(request);
+    }
+}
@@ -0,0 +1,51 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The filter and selection step of getLatestRevision, without any I/O, with a
+ * freshly compiled regex per poll versus the cached TagFilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TagFilterBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int tagCount;
+
+    @Param({".*", "^build-", "^[0-9]+\\.[0-9]+\\.[0-9]+$", "rc[0-9]$", "-rc|^build"})
+    public String filter;
+
+    private List<String> tags;
+
+    @Setup
+    public void setUp() {
+        tags = BenchmarkTags.generate(tagCount);
+    }
+
+    @Benchmark
+    public String compileAndSelect() {
+        LatestTagSelector selector = new LatestTagSelector(Pattern.compile(filter).asPredicate());
+        tags.forEach(selector);
+        return selector.getLatest();
+    }
+
+    @Benchmark
+    public String tagFilterAndSelect() {
+        LatestTagSelector selector = new LatestTagSelector(TagFilter.compile(filter));
+        tags.forEach(selector);
+        return selector.getLatest();
+    }
+}
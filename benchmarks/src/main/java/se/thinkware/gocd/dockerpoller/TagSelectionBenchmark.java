@@ -0,0 +1,60 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtering and selecting from a tag list in one serial pass versus a fork-join
+ * reduction over chunks, to see where LatestTagSelector.PARALLEL_THRESHOLD should be.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TagSelectionBenchmark {
+
+    @Param({"1000", "10000", "50000", "200000", "1000000"})
+    public int tagCount;
+
+    @Param({".*", "^[0-9]+\\.[0-9]+\\.[0-9]+$"})
+    public String filter;
+
+    @Param({"NATURAL", "SEMVER"})
+    public TagOrder order;
+
+    private List<String> tags;
+
+    @Setup
+    public void setUp() {
+        tags = BenchmarkTags.generate(tagCount);
+    }
+
+    @Benchmark
+    public String serial() {
+        LatestTagSelector selector = new LatestTagSelector(TagFilter.compile(filter), order, 1);
+        LatestTagSelector.selectAll(tags, Integer.MAX_VALUE, selector);
+        return selector.getLatest();
+    }
+
+    @Benchmark
+    public String parallel() {
+        LatestTagSelector selector = new LatestTagSelector(TagFilter.compile(filter), order, 1);
+        LatestTagSelector.selectAll(tags, 4096, selector);
+        return selector.getLatest();
+    }
+
+    @Benchmark
+    public String selectAll() {
+        LatestTagSelector selector = new LatestTagSelector(TagFilter.compile(filter), order, 1);
+        LatestTagSelector.selectAll(tags, selector);
+        return selector.getLatest();
+    }
+}
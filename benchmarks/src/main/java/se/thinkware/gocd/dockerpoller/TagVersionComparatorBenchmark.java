@@ -0,0 +1,66 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selecting the biggest of a tag list with the old expandNums() sort key versus
+ * TagVersionComparator. Run with -prof gc to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TagVersionComparatorBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int tagCount;
+
+    private List<String> tags;
+
+    @Setup
+    public void setUp() {
+        // expandNums() can't parse timestamps, so keep to tags both can handle.
+        tags = BenchmarkTags.generate(tagCount);
+        tags.removeIf(tag -> tag.matches(".*[0-9]{10,}.*"));
+    }
+
+    @Benchmark
+    public String expandNums() {
+        String latest = "";
+        for (String tag : tags) {
+            if (PackageRepositoryPoller.expandNums(tag).compareTo(PackageRepositoryPoller.expandNums(latest)) >= 0) {
+                latest = tag;
+            }
+        }
+        return latest;
+    }
+
+    @Benchmark
+    public String biggest() {
+        String latest = "";
+        for (String tag : tags) {
+            latest = PackageRepositoryPoller.biggest(latest, tag);
+        }
+        return latest;
+    }
+
+    @Benchmark
+    public String comparator() {
+        String latest = "";
+        for (String tag : tags) {
+            if (TagVersionComparator.INSTANCE.compare(tag, latest) >= 0) {
+                latest = tag;
+            }
+        }
+        return latest;
+    }
+}
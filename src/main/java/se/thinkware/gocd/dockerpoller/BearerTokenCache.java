@@ -0,0 +1,204 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.GenericUrl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bearer tokens from the registry token service, keyed by realm, service and scope,
+ * so that polls can send "Authorization: Bearer" up front instead of going through
+ * the 401 challenge on every request.
+ */
+class BearerTokenCache {
+
+    // Docker's token spec says to assume 60 seconds when expires_in is missing.
+    static final int DEFAULT_EXPIRES_IN = 60;
+
+    // Refresh a little before the registry would start rejecting the token.
+    private static final long EXPIRY_MARGIN_MILLIS = 5000;
+
+    private static final Pattern CHALLENGE_PARAM =
+            Pattern.compile("(\\w+)=\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+
+    private final Map<Challenge, Token> tokens = new ConcurrentHashMap<>();
+    private final Map<String, Challenge> challenges = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    BearerTokenCache() {
+        this(System::currentTimeMillis);
+    }
+
+    BearerTokenCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    static class Challenge {
+        final String realm;
+        final String service;
+        final String scope;
+
+        Challenge(String realm, String service, String scope) {
+            this.realm = realm;
+            this.service = service;
+            this.scope = scope;
+        }
+
+        static Challenge parse(String authenticate) {
+            if (authenticate == null || !authenticate.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                return null;
+            }
+            String realm = null;
+            String service = null;
+            String scope = null;
+            Matcher matcher = CHALLENGE_PARAM.matcher(authenticate);
+            while (matcher.find()) {
+                String name = matcher.group(1).toLowerCase();
+                if (name.equals("realm")) {
+                    realm = matcher.group(2);
+                } else if (name.equals("service")) {
+                    service = matcher.group(2);
+                } else if (name.equals("scope")) {
+                    scope = matcher.group(2);
+                }
+            }
+            return realm == null ? null : new Challenge(realm, service, scope);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Challenge that = (Challenge) o;
+
+            return realm.equals(that.realm) &&
+                    (service != null ? service.equals(that.service) : that.service == null) &&
+                    (scope != null ? scope.equals(that.scope) : that.scope == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = realm.hashCode();
+            result = 31 * result + (service != null ? service.hashCode() : 0);
+            result = 31 * result + (scope != null ? scope.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("realm=%s service=%s scope=%s", realm, service, scope);
+        }
+    }
+
+    private static class Token {
+        final String value;
+        final long expiresAt;
+
+        Token(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * The registry resource a URL belongs to, i.e. host plus repository path.
+     * Tag lists, manifests and blobs of one image share the same challenge.
+     */
+    static String resourceOf(GenericUrl url) {
+        String path = url.getRawPath() == null ? "" : url.getRawPath();
+        for (String marker : new String[]{"/tags/", "/manifests/", "/blobs/"}) {
+            int index = path.indexOf(marker);
+            if (index >= 0) {
+                path = path.substring(0, index);
+                break;
+            }
+        }
+        return url.getScheme() + "://" + url.getHost() + ":" + url.getPort() + path;
+    }
+
+    /**
+     * The challenge a resource answered with last time, or null.
+     */
+    Challenge challengeFor(String resource) {
+        return challenges.get(resource);
+    }
+
+    /**
+     * A challenge, followed by the others seen from the same token service, up to
+     * a maximum. One token asked for with all their scopes serves all those
+     * resources, so images of a registry don't each need a token of their own.
+     */
+    List<Challenge> relatedTo(Challenge challenge, int max) {
+        List<Challenge> related = new ArrayList<>();
+        related.add(challenge);
+        for (Challenge other : new LinkedHashSet<>(challenges.values())) {
+            if (related.size() >= max) {
+                break;
+            }
+            if (!other.equals(challenge) && other.scope != null &&
+                    other.realm.equals(challenge.realm) &&
+                    (other.service != null ? other.service.equals(challenge.service) : challenge.service == null)) {
+                related.add(other);
+            }
+        }
+        return related;
+    }
+
+    /**
+     * A still valid token for a resource we have seen a challenge for, or null.
+     */
+    String tokenFor(String resource) {
+        Challenge challenge = challenges.get(resource);
+        return challenge == null ? null : tokenFor(challenge);
+    }
+
+    String tokenFor(Challenge challenge) {
+        Token token = tokens.get(challenge);
+        if (token == null) {
+            return null;
+        }
+        if (clock.getAsLong() >= token.expiresAt) {
+            tokens.remove(challenge, token);
+            return null;
+        }
+        return token.value;
+    }
+
+    void put(Challenge challenge, DockerToken dockerToken) {
+        tokens.put(challenge, new Token(dockerToken.getToken(), expiresAt(dockerToken)));
+    }
+
+    /**
+     * Remember which challenge a resource answered with, so that the next request
+     * for it can pick the token without asking first.
+     */
+    void bind(String resource, Challenge challenge) {
+        challenges.put(resource, challenge);
+    }
+
+    /**
+     * Forget the token used for a resource after the registry rejected it.
+     */
+    void invalidate(String resource) {
+        Challenge challenge = challenges.get(resource);
+        if (challenge != null) {
+            tokens.remove(challenge);
+        }
+    }
+
+    // Counted from when we got the token. The issued_at of the token service can't be
+    // compared with our clock, which may be ahead of or behind the registry's.
+    private long expiresAt(DockerToken dockerToken) {
+        int expiresIn = dockerToken.getExpiresIn() == null || dockerToken.getExpiresIn() <= 0
+                ? DEFAULT_EXPIRES_IN
+                : dockerToken.getExpiresIn();
+        return clock.getAsLong() + expiresIn * 1000L - EXPIRY_MARGIN_MILLIS;
+    }
+}
@@ -0,0 +1,41 @@
+package se.thinkware.gocd.dockerpoller;
+
+/**
+ * What a scan of a registry's catalog found, and how long it took.
+ */
+class CatalogScan {
+
+    private final int images;
+    private final int tags;
+    private final int failed;
+    private final long elapsedMillis;
+
+    CatalogScan(int images, int tags, int failed, long elapsedMillis) {
+        this.images = images;
+        this.tags = tags;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    int getImages() {
+        return images;
+    }
+
+    int getTags() {
+        return tags;
+    }
+
+    int getFailed() {
+        return failed;
+    }
+
+    long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        String summary = String.format("Catalog has %d images with %d tags, scanned in %d ms.", images, tags, elapsedMillis);
+        return failed == 0 ? summary : String.format("%s Could not get the tags of %d images.", summary, failed);
+    }
+}
@@ -3,6 +3,27 @@ package se.thinkware.gocd.dockerpoller;
 class Constants {
     public static final String DOCKER_REGISTRY_URL = "DOCKER_REGISTRY_URL";
     public static final String DOCKER_REGISTRY_NAME = "DOCKER_REGISTRY_NAME";
+    public static final String DOCKER_TAG_PAGE_SIZE = "DOCKER_TAG_PAGE_SIZE";
+    public static final String DOCKER_CONDITIONAL_POLLING = "DOCKER_CONDITIONAL_POLLING";
+    public static final String DOCKER_TAG_CACHE_TTL = "DOCKER_TAG_CACHE_TTL";
+    public static final String DOCKER_MAX_CONNECTIONS = "DOCKER_MAX_CONNECTIONS";
+    public static final String DOCKER_CONNECT_TIMEOUT = "DOCKER_CONNECT_TIMEOUT";
+    public static final String DOCKER_READ_TIMEOUT = "DOCKER_READ_TIMEOUT";
+    public static final String DOCKER_CATALOG_PARALLELISM = "DOCKER_CATALOG_PARALLELISM";
+    public static final String DOCKER_REQUESTS_PER_MINUTE = "DOCKER_REQUESTS_PER_MINUTE";
+    public static final String DOCKER_PREFETCH_INTERVAL = "DOCKER_PREFETCH_INTERVAL";
+    public static final String DOCKER_IMAGE_METADATA = "DOCKER_IMAGE_METADATA";
+    public static final String DOCKER_POLL_TIMEOUT = "DOCKER_POLL_TIMEOUT";
+    public static final String DOCKER_USERNAME = "DOCKER_USERNAME";
+    public static final String DOCKER_PASSWORD = "DOCKER_PASSWORD";
     public static final String DOCKER_IMAGE = "DOCKER_IMAGE";
     public static final String DOCKER_TAG_FILTER = "DOCKER_TAG_FILTER";
+    public static final String DOCKER_REQUIRED_PLATFORMS = "DOCKER_REQUIRED_PLATFORMS";
+    public static final String DOCKER_TAG_ORDER = "DOCKER_TAG_ORDER";
+
+    // Keys in the revision data GoCD hands back with the previous revision
+    public static final String DOCKER_MANIFEST_DIGEST = "DOCKER_MANIFEST_DIGEST";
+    public static final String DOCKER_TAG_LIST_ETAG = "DOCKER_TAG_LIST_ETAG";
+    public static final String DOCKER_IMAGE_REVISION = "DOCKER_IMAGE_REVISION";
+    public static final String DOCKER_IMAGE_SOURCE = "DOCKER_IMAGE_SOURCE";
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Whatever was read from the registry about a manifest digest. A digest always
+ * names the same content, so entries never expire, and each image version is
+ * fetched at most once; callers asking for a digest being fetched wait for that
+ * fetch.
+ */
+class DigestCache<T> {
+
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private final Map<String, CompletableFuture<T>> entries;
+
+    DigestCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    DigestCache(int maxEntries) {
+        this.entries = new LinkedHashMap<String, CompletableFuture<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    T get(String digest, Loader<T> loader) throws IOException {
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing;
+        synchronized (entries) {
+            existing = entries.get(digest);
+            if (existing == null) {
+                entries.put(digest, mine);
+            }
+        }
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            T value = loader.load();
+            mine.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Failures are not cached; the next poll tries again. Errors too, so
+            // that callers waiting for this fetch are released.
+            synchronized (entries) {
+                entries.remove(digest, mine);
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * What was fetched for a digest, or null if it hasn't been, or is still being, fetched.
+     */
+    T getIfPresent(String digest) {
+        CompletableFuture<T> existing;
+        synchronized (entries) {
+            existing = entries.get(digest);
+        }
+        return existing != null && existing.isDone() && !existing.isCompletedExceptionally() ? existing.join() : null;
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a fetch from the registry", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+class DockerToken {
+
+    @SerializedName("token")
+    @Expose
+    private String token;
+    @SerializedName("access_token")
+    @Expose
+    private String accessToken;
+    @SerializedName("expires_in")
+    @Expose
+    private Integer expiresIn;
+    @SerializedName("issued_at")
+    @Expose
+    private String issuedAt;
+
+    public String getToken() {
+        return token != null ? token : accessToken;
+    }
+
+    public Integer getExpiresIn() {
+        return expiresIn;
+    }
+
+    public String getIssuedAt() {
+        return issuedAt;
+    }
+
+}
@@ -0,0 +1,37 @@
+package se.thinkware.gocd.dockerpoller;
+
+/**
+ * What a tag list fetch returned, besides the tags themselves.
+ */
+class FetchedTags {
+
+    private final int count;
+    private final String etag;
+    private final boolean notModified;
+
+    FetchedTags(int count, String etag) {
+        this(count, etag, false);
+    }
+
+    private FetchedTags(int count, String etag, boolean notModified) {
+        this.count = count;
+        this.etag = etag;
+        this.notModified = notModified;
+    }
+
+    static FetchedTags notModified(String etag) {
+        return new FetchedTags(0, etag, true);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    boolean isNotModified() {
+        return notModified;
+    }
+}
@@ -0,0 +1,155 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What an image's config blob says about it: when it was built, and its labels,
+ * among them the OCI or label-schema ones naming the source it was built from.
+ */
+class ImageMetadata {
+
+    static final String[] REVISION_LABELS = {"org.opencontainers.image.revision", "org.label-schema.vcs-ref"};
+    static final String[] SOURCE_LABELS = {"org.opencontainers.image.source", "org.opencontainers.image.url",
+            "org.label-schema.vcs-url", "org.label-schema.url"};
+    static final String[] AUTHOR_LABELS = {"org.opencontainers.image.authors", "maintainer"};
+
+    private final String digest;
+    private final Date created;
+    private final Map<String, String> labels;
+
+    ImageMetadata(String digest, Date created, Map<String, String> labels) {
+        this.digest = digest;
+        this.created = created;
+        this.labels = Collections.unmodifiableMap(labels);
+    }
+
+    /**
+     * The digest of the config blob to fetch for a manifest, or null if it has none,
+     * e.g. a manifest list, which has to be resolved to a manifest first.
+     */
+    static String configDigestOf(String manifest) {
+        JsonObject config = object(parse(manifest), "config");
+        return string(config, "digest");
+    }
+
+    /**
+     * The linux/amd64 manifest of a manifest list or OCI index, or else the first one.
+     */
+    static String defaultManifestOf(String index) {
+        JsonElement manifests = parse(index).get("manifests");
+        if (manifests == null || !manifests.isJsonArray() || manifests.getAsJsonArray().size() == 0) {
+            return null;
+        }
+        for (JsonElement manifest : manifests.getAsJsonArray()) {
+            JsonObject platform = object(manifest.getAsJsonObject(), "platform");
+            if ("linux".equals(string(platform, "os")) && "amd64".equals(string(platform, "architecture"))) {
+                return string(manifest.getAsJsonObject(), "digest");
+            }
+        }
+        return string(manifests.getAsJsonArray().get(0).getAsJsonObject(), "digest");
+    }
+
+    /**
+     * Old schema 1 manifests have no config blob, but carry the same information
+     * for the top layer as a JSON string. Returns null for other manifests.
+     */
+    static ImageMetadata fromSchema1(String digest, String manifest) {
+        JsonElement history = parse(manifest).get("history");
+        if (history == null || !history.isJsonArray() || history.getAsJsonArray().size() == 0) {
+            return null;
+        }
+        String v1Compatibility = string(history.getAsJsonArray().get(0).getAsJsonObject(), "v1Compatibility");
+        return v1Compatibility == null ? null : fromConfig(digest, v1Compatibility);
+    }
+
+    static ImageMetadata fromConfig(String digest, String configBlob) {
+        JsonObject config = parse(configBlob);
+        Map<String, String> labels = new LinkedHashMap<>();
+        JsonObject labelObject = object(object(config, "config"), "Labels");
+        if (labelObject != null) {
+            for (Map.Entry<String, JsonElement> label : labelObject.entrySet()) {
+                if (label.getValue().isJsonPrimitive()) {
+                    labels.put(label.getKey(), label.getValue().getAsString());
+                }
+            }
+        }
+        return new ImageMetadata(digest, parseDate(string(config, "created")), labels);
+    }
+
+    static Date parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return Date.from(OffsetDateTime.parse(date).toInstant());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    static JsonObject parse(String json) {
+        try {
+            JsonElement element = new JsonParser().parse(json);
+            if (element.isJsonObject()) {
+                return element.getAsJsonObject();
+            }
+        } catch (JsonParseException e) {
+            // Handled below
+        }
+        throw new IllegalArgumentException("Expected a JSON object");
+    }
+
+    static JsonObject object(JsonObject parent, String name) {
+        JsonElement element = parent == null ? null : parent.get(name);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    static String string(JsonObject parent, String name) {
+        JsonElement element = parent == null ? null : parent.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    String getDigest() {
+        return digest;
+    }
+
+    Date getCreated() {
+        return created;
+    }
+
+    Map<String, String> getLabels() {
+        return labels;
+    }
+
+    String getRevision() {
+        return firstLabel(REVISION_LABELS);
+    }
+
+    String getSource() {
+        return firstLabel(SOURCE_LABELS);
+    }
+
+    String getAuthor() {
+        return firstLabel(AUTHOR_LABELS);
+    }
+
+    private String firstLabel(String[] names) {
+        for (String name : names) {
+            String value = labels.get(name);
+            if (value != null && !value.trim().isEmpty()) {
+                return value.trim();
+            }
+        }
+        return null;
+    }
+}
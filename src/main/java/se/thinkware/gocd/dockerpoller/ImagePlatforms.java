@@ -0,0 +1,105 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Platforms are written os/architecture[/variant], as with docker's --platform.
+ * A required platform without a variant is met by any variant of it.
+ */
+class ImagePlatforms {
+
+    private static final Pattern PLATFORM = Pattern.compile("[a-z0-9_.-]+/[a-z0-9_.-]+(/[a-z0-9_.-]+)?");
+
+    // Entries such as build attestations, which aren't images to run.
+    private static final String UNKNOWN = "unknown/unknown";
+
+    /**
+     * The platforms named in a package property, separated by commas or spaces.
+     * Throws IllegalArgumentException for anything that isn't a platform.
+     */
+    static List<String> parse(String property) {
+        if (property == null || property.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> platforms = new ArrayList<>();
+        for (String platform : property.trim().toLowerCase().split("[,\\s]+")) {
+            if (!PLATFORM.matcher(platform).matches()) {
+                throw new IllegalArgumentException("Not an os/architecture platform: " + platform);
+            }
+            platforms.add(platform);
+        }
+        return platforms;
+    }
+
+    /**
+     * The platforms of a manifest list or OCI index, or null if the manifest is
+     * for a single image.
+     */
+    static Set<String> ofIndex(String manifest) throws IOException {
+        try {
+            JsonElement manifests = ImageMetadata.parse(manifest).get("manifests");
+            if (manifests == null || !manifests.isJsonArray()) {
+                return null;
+            }
+            Set<String> platforms = new LinkedHashSet<>();
+            for (JsonElement entry : manifests.getAsJsonArray()) {
+                String platform = of(ImageMetadata.object(entry.getAsJsonObject(), "platform"));
+                if (platform != null && !platform.equals(UNKNOWN)) {
+                    platforms.add(platform);
+                }
+            }
+            return platforms;
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException e) {
+            throw new IOException("Malformed manifest list: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The platform a single image was built for, from its config blob.
+     */
+    static Set<String> ofConfig(String config) throws IOException {
+        try {
+            String platform = of(ImageMetadata.parse(config));
+            return platform == null ? Collections.emptySet() : Collections.singleton(platform);
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException e) {
+            throw new IOException("Malformed image config: " + e.getMessage(), e);
+        }
+    }
+
+    static boolean covers(Collection<String> available, Collection<String> required) {
+        for (String platform : required) {
+            boolean found = false;
+            for (String candidate : available) {
+                if (candidate.equals(platform) || candidate.startsWith(platform + "/")) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String of(JsonObject platform) {
+        String os = ImageMetadata.string(platform, "os");
+        String architecture = ImageMetadata.string(platform, "architecture");
+        if (os == null || architecture == null) {
+            return null;
+        }
+        String variant = ImageMetadata.string(platform, "variant");
+        String name = os + "/" + architecture;
+        return (variant == null || variant.isEmpty() ? name : name + "/" + variant).toLowerCase();
+    }
+}
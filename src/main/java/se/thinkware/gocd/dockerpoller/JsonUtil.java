@@ -1,18 +1,47 @@
 package se.thinkware.gocd.dockerpoller;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import se.thinkware.gocd.dockerpoller.message.*;
 
 class JsonUtil {
 
-    public static String toJsonString(Object object) {
+    // Gson instances are thread-safe and cache the adapters they build, so they are
+    // shared instead of paying for reflection on every message.
+    private static final Gson TO_JSON = builder().excludeFieldsWithoutExposeAnnotation().create();
+    private static final Gson FROM_JSON = builder().create();
+
+    static {
+        for (Class<?> type : new Class<?>[]{
+                CheckConnectionResultMessage.class,
+                LatestPackageRevisionMessage.class,
+                LatestPackageRevisionSinceMessage.class,
+                LatestPackageRevisionsMessage.class,
+                PackageConnectionMessage.class,
+                RepositoryConnectionMessage.class,
+                TopTagsMessage.class,
+                ValidatePackageConfigurationMessage.class,
+                ValidateRepositoryConfigurationMessage.class,
+                ValidationError.class,
+        }) {
+            TO_JSON.getAdapter(type);
+            FROM_JSON.getAdapter(type);
+        }
+    }
+
+    private static GsonBuilder builder() {
         GsonBuilder gsonBuilder = new GsonBuilder();
         gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.excludeFieldsWithoutExposeAnnotation().create().toJson(object);
+        gsonBuilder.registerTypeAdapter(PackageMaterialProperty.class, new PackageMaterialPropertyTypeAdapter());
+        gsonBuilder.registerTypeAdapterFactory(new PackageRevisionMessageTypeAdapterFactory());
+        return gsonBuilder;
+    }
+
+    public static String toJsonString(Object object) {
+        return TO_JSON.toJson(object);
     }
 
     public static <T> T fromJsonString(String json, Class<T> type) {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.create().fromJson(json, type);
+        return FROM_JSON.fromJson(json, type);
     }
-}
\ No newline at end of file
+}
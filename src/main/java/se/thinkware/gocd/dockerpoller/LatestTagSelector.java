@@ -0,0 +1,203 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the biggest tag accepted by a filter while tags are streamed past it,
+ * so that the full tag list never has to be held in memory. It can also keep a
+ * few runners-up, for when the biggest tag turns out not to be usable.
+ */
+class LatestTagSelector implements Consumer<String> {
+
+    // Lists at least this long are split up and selected from in parallel.
+    static final int PARALLEL_THRESHOLD = 50000;
+
+    private final Predicate<String> filter;
+    private final TagOrder order;
+    private final int candidates;
+    // Sort keys are only kept, for the tags held on to, by orders that compare them.
+    private final boolean keyed;
+    private final List<String> runnersUp;
+    private final List<String> runnerUpKeys;
+    private String latest = null;
+    private String latestKey = null;
+    private int matching = 0;
+
+    LatestTagSelector(Predicate<String> filter) {
+        this(filter, 1);
+    }
+
+    LatestTagSelector(Predicate<String> filter, int candidates) {
+        this(filter, TagOrder.NATURAL, candidates);
+    }
+
+    LatestTagSelector(Predicate<String> filter, TagOrder order, int candidates) {
+        this.filter = filter;
+        this.order = order;
+        this.candidates = candidates;
+        this.keyed = order.hasSortKeys();
+        this.runnersUp = candidates > 1 ? new ArrayList<>(candidates) : Collections.emptyList();
+        this.runnerUpKeys = candidates > 1 ? new ArrayList<>(candidates) : Collections.emptyList();
+    }
+
+    @Override
+    public void accept(String tag) {
+        if (filter.test(tag)) {
+            matching++;
+            String key = keyed ? order.sortKey(tag) : null;
+            if (candidates > 1) {
+                keep(tag, key);
+            }
+            // Of equal tags, the last one wins.
+            if (latest == null || compare(tag, key, latest, latestKey) >= 0) {
+                latest = tag;
+                latestKey = key;
+            }
+        }
+    }
+
+    // Sorted biggest first; the few candidates make insertion cheap enough.
+    private void keep(String tag, String key) {
+        int position = runnerUpKeys.size();
+        while (position > 0 && compare(runnersUp.get(position - 1), runnerUpKeys.get(position - 1), tag, key) <= 0) {
+            position--;
+        }
+        if (position < candidates) {
+            runnersUp.add(position, tag);
+            runnerUpKeys.add(position, key);
+            if (runnersUp.size() > candidates) {
+                runnersUp.remove(candidates);
+                runnerUpKeys.remove(candidates);
+            }
+        }
+    }
+
+    private int compare(String first, String firstKey, String second, String secondKey) {
+        return keyed ? firstKey.compareTo(secondKey) : order.compare(first, second);
+    }
+
+    /**
+     * Counts matching tags that weren't fed to this selector, such as those a tag
+     * index knows it has already selected from.
+     */
+    void countKnownMatches(int known) {
+        matching += known;
+    }
+
+    /**
+     * Takes in what another selector with the same filter, order and candidates
+     * selected from tags that came after those this one has seen.
+     */
+    void merge(LatestTagSelector later) {
+        matching += later.matching;
+        if (candidates > 1) {
+            // Oldest first, so that of equal tags the last one still ends up first.
+            for (int i = later.runnersUp.size() - 1; i >= 0; i--) {
+                keep(later.runnersUp.get(i), later.runnerUpKeys.get(i));
+            }
+        }
+        if (later.latest != null && (latest == null || compare(later.latest, later.latestKey, latest, latestKey) >= 0)) {
+            latest = later.latest;
+            latestKey = later.latestKey;
+        }
+    }
+
+    /**
+     * Selects from all the tags with each of the selectors, in a single pass. Lists
+     * of at least PARALLEL_THRESHOLD tags are split into chunks that are selected
+     * from on the common fork-join pool and merged in order, with the same result.
+     */
+    static void selectAll(List<String> tags, LatestTagSelector... selectors) {
+        selectAll(tags, PARALLEL_THRESHOLD, selectors);
+    }
+
+    static void selectAll(List<String> tags, int threshold, LatestTagSelector... selectors) {
+        if (tags.size() < threshold) {
+            select(tags, 0, tags.size(), selectors);
+            return;
+        }
+        LatestTagSelector[] selected = ForkJoinPool.commonPool().invoke(new Chunk(tags, 0, tags.size(), threshold, selectors));
+        for (int i = 0; i < selectors.length; i++) {
+            selectors[i].merge(selected[i]);
+        }
+    }
+
+    private static void select(List<String> tags, int from, int to, LatestTagSelector[] selectors) {
+        for (int i = from; i < to; i++) {
+            String tag = tags.get(i);
+            for (LatestTagSelector selector : selectors) {
+                selector.accept(tag);
+            }
+        }
+    }
+
+    private static class Chunk extends RecursiveTask<LatestTagSelector[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> tags;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final LatestTagSelector[] selectors;
+
+        Chunk(List<String> tags, int from, int to, int threshold, LatestTagSelector[] selectors) {
+            this.tags = tags;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.selectors = selectors;
+        }
+
+        @Override
+        protected LatestTagSelector[] compute() {
+            if (to - from <= threshold) {
+                LatestTagSelector[] selected = new LatestTagSelector[selectors.length];
+                for (int i = 0; i < selectors.length; i++) {
+                    LatestTagSelector selector = selectors[i];
+                    selected[i] = new LatestTagSelector(selector.filter, selector.order, selector.candidates);
+                }
+                select(tags, from, to, selected);
+                return selected;
+            }
+            int middle = (from + to) >>> 1;
+            Chunk first = new Chunk(tags, from, middle, threshold, selectors);
+            first.fork();
+            LatestTagSelector[] second = new Chunk(tags, middle, to, threshold, selectors).compute();
+            LatestTagSelector[] selected = first.join();
+            for (int i = 0; i < selected.length; i++) {
+                selected[i].merge(second[i]);
+            }
+            return selected;
+        }
+    }
+
+    String getLatest() {
+        return latest;
+    }
+
+    /**
+     * The biggest tags, biggest first; just the latest one unless the selector
+     * was asked to keep more.
+     */
+    List<String> getCandidates() {
+        if (candidates > 1) {
+            return Collections.unmodifiableList(runnersUp);
+        }
+        return latest == null ? Collections.emptyList() : Collections.singletonList(latest);
+    }
+
+    int getMatching() {
+        return matching;
+    }
+
+    // Whether tags other than the latest are kept, e.g. to fall back on for platforms.
+    boolean keepsRunnersUp() {
+        return candidates > 1;
+    }
+}
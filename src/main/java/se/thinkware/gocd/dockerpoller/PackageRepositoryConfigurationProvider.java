@@ -5,6 +5,8 @@ import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
 import se.thinkware.gocd.dockerpoller.message.ValidationError;
 import se.thinkware.gocd.dockerpoller.message.ValidationResultMessage;
 
+import java.util.regex.PatternSyntaxException;
+
 class PackageRepositoryConfigurationProvider {
 
     public PackageMaterialProperties repositoryConfiguration() {
@@ -25,6 +27,111 @@ class PackageRepositoryConfigurationProvider {
                         .withPartOfIdentity(true)
                         .withRequired(true)
         );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_TAG_PAGE_SIZE,
+                new PackageMaterialProperty()
+                        .withDisplayName("Tags per Page (empty for registry default)")
+                        .withDisplayOrder("2")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_CONDITIONAL_POLLING,
+                new PackageMaterialProperty()
+                        .withDisplayName("Conditional Polling with ETags and Manifest Digests (true/false)")
+                        .withDisplayOrder("3")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_TAG_CACHE_TTL,
+                new PackageMaterialProperty()
+                        .withDisplayName("Seconds to Share Tag Lists between Packages of an Image")
+                        .withDisplayOrder("4")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_MAX_CONNECTIONS,
+                new PackageMaterialProperty()
+                        .withDisplayName("Max Pooled Connections to the Registry (default 20)")
+                        .withDisplayOrder("5")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_CONNECT_TIMEOUT,
+                new PackageMaterialProperty()
+                        .withDisplayName("Connect Timeout in Seconds (default 20)")
+                        .withDisplayOrder("6")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_READ_TIMEOUT,
+                new PackageMaterialProperty()
+                        .withDisplayName("Read Timeout in Seconds (default 20)")
+                        .withDisplayOrder("7")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_CATALOG_PARALLELISM,
+                new PackageMaterialProperty()
+                        .withDisplayName("Parallel Tag Fetches when Scanning the Catalog (empty for no scan)")
+                        .withDisplayOrder("8")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_REQUESTS_PER_MINUTE,
+                new PackageMaterialProperty()
+                        .withDisplayName("Max Requests per Minute to the Registry (empty for no limit)")
+                        .withDisplayOrder("9")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_PREFETCH_INTERVAL,
+                new PackageMaterialProperty()
+                        .withDisplayName("Seconds between Background Tag List Refreshes (empty for none)")
+                        .withDisplayOrder("10")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_IMAGE_METADATA,
+                new PackageMaterialProperty()
+                        .withDisplayName("Revision Details from Image Manifests (true/false)")
+                        .withDisplayOrder("11")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_POLL_TIMEOUT,
+                new PackageMaterialProperty()
+                        .withDisplayName("Seconds before a Poll is Abandoned")
+                        .withDisplayOrder("12")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_USERNAME,
+                new PackageMaterialProperty()
+                        .withDisplayName("Username")
+                        .withDisplayOrder("13")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_PASSWORD,
+                new PackageMaterialProperty()
+                        .withDisplayName("Password or Access Token")
+                        .withDisplayOrder("14")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+                        .withSecure(true)
+        );
         return repositoryConfigurationResponse;
     }
 
@@ -46,6 +153,22 @@ class PackageRepositoryConfigurationProvider {
                         .withPartOfIdentity(true)
                         .withRequired(false)
         );
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_REQUIRED_PLATFORMS,
+                new PackageMaterialProperty()
+                        .withDisplayName("Required Platforms (e.g. linux/amd64, linux/arm64)")
+                        .withDisplayOrder("2")
+                        .withPartOfIdentity(true)
+                        .withRequired(false)
+        );
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_TAG_ORDER,
+                new PackageMaterialProperty()
+                        .withDisplayName("Tag Order (natural, semver, lexical or pushed)")
+                        .withDisplayOrder("3")
+                        .withPartOfIdentity(true)
+                        .withRequired(false)
+        );
         return packageConfigurationResponse;
     }
 
@@ -67,10 +190,49 @@ class PackageRepositoryConfigurationProvider {
             );
             return validationResultMessage;
         }
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_TAG_PAGE_SIZE, "Tags per page");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_TAG_CACHE_TTL, "Tag list cache time");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_MAX_CONNECTIONS, "Max connections");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_CONNECT_TIMEOUT, "Connect timeout");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_READ_TIMEOUT, "Read timeout");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_CATALOG_PARALLELISM, "Catalog parallelism");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_REQUESTS_PER_MINUTE, "Requests per minute");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_PREFETCH_INTERVAL, "Refresh interval");
+        validateNumber(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_POLL_TIMEOUT, "Poll timeout");
+        PackageMaterialProperty conditional = configurationProvidedByUser.getProperty(Constants.DOCKER_CONDITIONAL_POLLING);
+        if (conditional != null && conditional.value() != null && !conditional.value().trim().isEmpty()) {
+            if (!conditional.value().trim().matches("(?i)true|false")) {
+                validationResultMessage.addError(
+                        ValidationError.create(Constants.DOCKER_CONDITIONAL_POLLING, "Conditional polling must be true or false")
+                );
+            }
+        }
+        PackageMaterialProperty metadata = configurationProvidedByUser.getProperty(Constants.DOCKER_IMAGE_METADATA);
+        if (metadata != null && metadata.value() != null && !metadata.value().trim().isEmpty()) {
+            if (!metadata.value().trim().matches("(?i)true|false")) {
+                validationResultMessage.addError(
+                        ValidationError.create(Constants.DOCKER_IMAGE_METADATA, "Revision details from image manifests must be true or false")
+                );
+            }
+        }
         return validationResultMessage;
 
     }
 
+    private static void validateNumber(
+            ValidationResultMessage validationResultMessage,
+            PackageMaterialProperties configurationProvidedByUser,
+            String key,
+            String what
+    ) {
+        PackageMaterialProperty property = configurationProvidedByUser.getProperty(key);
+        if (property != null && property.value() != null && !property.value().trim().isEmpty()) {
+            if (!property.value().trim().matches("[0-9]{1,9}")) {
+                validationResultMessage.addError(ValidationError.create(key, what + " must be a non-negative number"));
+            }
+        }
+    }
+
     public ValidationResultMessage validatePackageConfiguration(PackageMaterialProperties configurationProvidedByUser) {
         ValidationResultMessage validationResultMessage = new ValidationResultMessage();
         PackageMaterialProperty imageConfig = configurationProvidedByUser.getProperty(Constants.DOCKER_IMAGE);
@@ -87,6 +249,34 @@ class PackageRepositoryConfigurationProvider {
             validationResultMessage.addError(ValidationError.create(Constants.DOCKER_IMAGE, "Docker image is empty"));
             return validationResultMessage;
         }
+        PackageMaterialProperty filterConfig = configurationProvidedByUser.getProperty(Constants.DOCKER_TAG_FILTER);
+        if (filterConfig != null && filterConfig.value() != null) {
+            try {
+                TagFilter.compile(filterConfig.value());
+            } catch (PatternSyntaxException e) {
+                validationResultMessage.addError(ValidationError.create(
+                        Constants.DOCKER_TAG_FILTER, "Invalid docker tag filter: " + e.getDescription()));
+                return validationResultMessage;
+            }
+        }
+        PackageMaterialProperty platformsConfig = configurationProvidedByUser.getProperty(Constants.DOCKER_REQUIRED_PLATFORMS);
+        if (platformsConfig != null) {
+            try {
+                ImagePlatforms.parse(platformsConfig.value());
+            } catch (IllegalArgumentException e) {
+                validationResultMessage.addError(ValidationError.create(
+                        Constants.DOCKER_REQUIRED_PLATFORMS, e.getMessage()));
+            }
+        }
+        PackageMaterialProperty orderConfig = configurationProvidedByUser.getProperty(Constants.DOCKER_TAG_ORDER);
+        if (orderConfig != null) {
+            try {
+                TagOrder.of(orderConfig.value());
+            } catch (IllegalArgumentException e) {
+                validationResultMessage.addError(ValidationError.create(
+                        Constants.DOCKER_TAG_ORDER, e.getMessage()));
+            }
+        }
         return validationResultMessage;
     }
 
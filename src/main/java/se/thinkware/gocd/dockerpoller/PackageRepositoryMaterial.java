@@ -1,15 +1,20 @@
 package se.thinkware.gocd.dockerpoller;
 
+import com.google.api.client.http.HttpTransport;
 import com.thoughtworks.go.plugin.api.AbstractGoPlugin;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
 import com.thoughtworks.go.plugin.api.annotation.Extension;
+import com.thoughtworks.go.plugin.api.annotation.UnLoad;
+import com.thoughtworks.go.plugin.api.info.PluginContext;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import se.thinkware.gocd.dockerpoller.message.*;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse.success;
@@ -28,14 +33,28 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
     public static final String REQUEST_CHECK_PACKAGE_CONNECTION = "check-package-connection";
     public static final String REQUEST_LATEST_PACKAGE_REVISION = "latest-revision";
     public static final String REQUEST_LATEST_PACKAGE_REVISION_SINCE = "latest-revision-since";
+    // Not part of the GoCD package material API; for operators.
+    public static final String REQUEST_LATEST_PACKAGE_REVISIONS = "latest-revisions";
+    public static final String REQUEST_POLL_METRICS = "poll-metrics";
+    public static final String REQUEST_TOP_TAGS = "top-tags";
 
     private Map<String, MessageHandler> handlerMap = new LinkedHashMap<>();
     private PackageRepositoryConfigurationProvider configurationProvider;
     private final PackageRepositoryPoller packageRepositoryPoller;
 
     public PackageRepositoryMaterial() {
+        this(null);
+    }
+
+    // This is used for testing and benchmarks, so that we can mock the HttpTransport
+    PackageRepositoryMaterial(HttpTransport transport) {
         configurationProvider = new PackageRepositoryConfigurationProvider();
-        packageRepositoryPoller = new PackageRepositoryPoller(configurationProvider);
+        if (transport == null) {
+            packageRepositoryPoller = new PackageRepositoryPoller(configurationProvider);
+            packageRepositoryPoller.listenForWebhooks();
+        } else {
+            packageRepositoryPoller = new PackageRepositoryPoller(configurationProvider, transport);
+        }
         handlerMap.put(REQUEST_REPOSITORY_CONFIGURATION, repositoryConfigurationsMessageHandler());
         handlerMap.put(REQUEST_PACKAGE_CONFIGURATION, packageConfigurationMessageHandler());
         handlerMap.put(REQUEST_VALIDATE_REPOSITORY_CONFIGURATION, validateRepositoryConfigurationMessageHandler());
@@ -44,6 +63,9 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
         handlerMap.put(REQUEST_CHECK_PACKAGE_CONNECTION, checkPackageConnectionMessageHandler());
         handlerMap.put(REQUEST_LATEST_PACKAGE_REVISION, latestRevisionMessageHandler());
         handlerMap.put(REQUEST_LATEST_PACKAGE_REVISION_SINCE, latestRevisionSinceMessageHandler());
+        handlerMap.put(REQUEST_LATEST_PACKAGE_REVISIONS, latestRevisionsMessageHandler());
+        handlerMap.put(REQUEST_POLL_METRICS, pollMetricsMessageHandler());
+        handlerMap.put(REQUEST_TOP_TAGS, topTagsMessageHandler());
     }
 
 
@@ -59,6 +81,12 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
         }
     }
 
+    // GoCD unloads the plugin when it's removed or replaced, and it must leave nothing running.
+    @UnLoad
+    public void onUnload(PluginContext context) {
+        packageRepositoryPoller.shutdown();
+    }
+
     @Override
     public GoPluginIdentifier pluginIdentifier() {
         return new GoPluginIdentifier(EXTENSION, Collections.singletonList("1.0"));
@@ -156,4 +184,40 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
         };
     }
 
+    MessageHandler latestRevisionsMessageHandler() {
+        return new MessageHandler() {
+            @Override
+            public GoPluginApiResponse handle(GoPluginApiRequest request) {
+                LatestPackageRevisionsMessage message = fromJsonString(request.requestBody(), LatestPackageRevisionsMessage.class);
+                List<PackageRevisionMessage> revisions = packageRepositoryPoller.getLatestRevisions(message.getPackages());
+                return success(toJsonString(revisions));
+            }
+        };
+    }
+
+    MessageHandler pollMetricsMessageHandler() {
+        return new MessageHandler() {
+            @Override
+            public GoPluginApiResponse handle(GoPluginApiRequest request) {
+                return success(toJsonString(packageRepositoryPoller.getMetrics().toMap()));
+            }
+        };
+    }
+
+    MessageHandler topTagsMessageHandler() {
+        return new MessageHandler() {
+            @Override
+            public GoPluginApiResponse handle(GoPluginApiRequest request) {
+                TopTagsMessage message = fromJsonString(request.requestBody(), TopTagsMessage.class);
+                try {
+                    Map<String, Object> topTags = packageRepositoryPoller.getTopTags(
+                            message.getPackageConfiguration(), message.getRepositoryConfiguration(), message.getCount(), message.withDigests());
+                    return success(toJsonString(topTags));
+                } catch (IOException e) {
+                    return DefaultGoPluginApiResponse.error("Got no tags: " + e.getMessage());
+                }
+            }
+        };
+    }
+
 }
\ No newline at end of file
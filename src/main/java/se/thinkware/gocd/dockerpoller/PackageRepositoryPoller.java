@@ -5,102 +5,372 @@ import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpHeaders;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpMediaType;
 import com.google.api.client.json.gson.GsonFactory;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-import com.thoughtworks.go.plugin.api.logging.Logger;
 import se.thinkware.gocd.dockerpoller.message.CheckConnectionResultMessage;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionSinceMessage;
 import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
 import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
 import se.thinkware.gocd.dockerpoller.message.ValidationResultMessage;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.util.stream.Collectors;
 
 import static se.thinkware.gocd.dockerpoller.JsonUtil.fromJsonString;
 
 class PackageRepositoryPoller {
 
-    private static Logger LOGGER = Logger.getLoggerFor(PackageRepositoryPoller.class);
+    private static PollLog LOGGER = PollLog.getLogFor(PackageRepositoryPoller.class);
+
+    static final String MANIFEST_MEDIA_TYPES = String.join(", ",
+            "application/vnd.docker.distribution.manifest.v2+json",
+            "application/vnd.docker.distribution.manifest.list.v2+json",
+            "application/vnd.oci.image.manifest.v1+json",
+            "application/vnd.oci.image.index.v1+json");
+
+    private static final int DETAILS_THREADS = 4;
+
+    // Keeps token URLs to a sensible length.
+    static final int MAX_SCOPES_PER_TOKEN = 20;
+
+    // How far back to look for a tag that has all required platforms.
+    static final int PLATFORM_CANDIDATES = 8;
+    // The tags in natural order whose push times are looked up.
+    static final int PUSHED_CANDIDATES = 8;
+    static final int MAX_TOP_TAGS = 1000;
+
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"?next\"?");
 
     private PackageRepositoryConfigurationProvider configurationProvider;
 
     private final HttpTransport transport;
 
+    private final HttpRequestFactory requestFactory;
+
+    private final RegistryConnections connections;
+
+    // Tokens for registries used anonymously.
+    private final BearerTokenCache tokenCache = new BearerTokenCache();
+
+    // Tokens of each account, by registry and account.
+    private final Map<String, BearerTokenCache> sessions = new ConcurrentHashMap<>();
+
+    // Accounts, by registry, of registries that want Basic auth rather than tokens.
+    private final Set<String> basicAccounts = ConcurrentHashMap.newKeySet();
+
+    // Access tokens, by registry, that the token service refused, and that go to the registry as they are.
+    private final Set<String> rawTokenAccounts = ConcurrentHashMap.newKeySet();
+
+    private final TagListCache tagListCache = new TagListCache();
+
+    private final TagPrefetcher prefetcher = new TagPrefetcher(
+            (url, account, pageSize) -> fetchTagList(new GenericUrl(url), account, pageSize), tagListCache);
+
+    private final PollMetrics metrics = new PollMetrics();
+
+    private final TagIndexStore tagIndexes = TagIndexStore.configured();
+
+    private final SelectionMemo selections = new SelectionMemo();
+
+    private final DigestCache<ImageMetadata> imageMetadataCache = new DigestCache<>();
+
+    private final DigestCache<Set<String>> platformCache = new DigestCache<>();
+
+    private ExecutorService detailsExecutor;
+
+    private final PollRunner runner = new PollRunner();
+
+    private WebhookReceiver webhooks;
+
+    // The last revision found for each image and filter, served while the registry makes us back off.
+    private final Map<String, PackageRevisionMessage> lastGoodRevisions = new ConcurrentHashMap<>();
+
     public PackageRepositoryPoller(PackageRepositoryConfigurationProvider configurationProvider) {
+        this(configurationProvider, RegistryConnections.configured());
         LOGGER.info("Instatiated PackageRepositoryPoller");
-        this.configurationProvider = configurationProvider;
-        this.transport = new NetHttpTransport();
     }
 
     // This is used for testing, so that we can mock the HttpTransport
     public PackageRepositoryPoller(
             PackageRepositoryConfigurationProvider configurationProvider,
             HttpTransport transport
+    ) {
+        this(configurationProvider, new RegistryConnections(transport));
+    }
+
+    private PackageRepositoryPoller(
+            PackageRepositoryConfigurationProvider configurationProvider,
+            RegistryConnections connections
     ) {
         this.configurationProvider = configurationProvider;
-        this.transport = transport;
+        this.connections = connections;
+        this.transport = connections.getTransport();
+        this.requestFactory = transport.createRequestFactory();
     }
     
-    private HttpResponse getUrl(GenericUrl url) throws IOException {
-        HttpRequest request = transport.createRequestFactory().buildGetRequest(url);
+    private HttpResponse execute(String method, GenericUrl url, HttpHeaders headers, String authorization) throws IOException {
+        HttpRequest request = requestFactory.buildRequest(method, url, null);
+        connections.apply(request);
+        if (headers != null) {
+            request.getHeaders().fromHttpHeaders(headers);
+        }
+        if (authorization != null) {
+            request.getHeaders().setAuthorization(authorization);
+        }
         request.setThrowExceptionOnExecuteError(false);
+        // A poll that was given up on sends nothing more.
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Poll abandoned before " + method + " " + url);
+        }
+        RegistryThrottle throttle = connections.throttleFor(url);
+        throttle.acquire();
         HttpResponse response = request.execute();
+        throttle.record(response.getStatusCode(), response.getHeaders().getRetryAfter());
+        return response;
+    }
+
+    // 304 Not Modified is an answer to a conditional request, not an error.
+    private static boolean isUsable(HttpResponse response) {
+        return response.isSuccessStatusCode() || response.getStatusCode() == 304;
+    }
+
+    PollMetrics getMetrics() {
+        return metrics;
+    }
+
+    // An account on a registry, for the tokens it shares between all images of the registry.
+    private static String sessionOf(GenericUrl url, RegistryCredentials account) {
+        return account == null ? null : RegistryConnections.keyOf(url) + " " + account.accountKey();
+    }
+
+    /**
+     * Gets a token for a challenge, asking for the scopes of the other resources
+     * seen from the same token service too, and keeps it for all of them.
+     */
+    private String renewToken(
+            GenericUrl url,
+            BearerTokenCache.Challenge challenge,
+            BearerTokenCache tokens,
+            RegistryCredentials account
+    ) throws IOException {
+        List<BearerTokenCache.Challenge> related = tokens.relatedTo(challenge, MAX_SCOPES_PER_TOKEN);
+        DockerToken dockerToken = fetchToken(url, related, account);
+        for (BearerTokenCache.Challenge scope : related) {
+            tokens.put(scope, dockerToken);
+        }
+        return dockerToken.getToken();
+    }
+
+    private DockerToken fetchToken(
+            GenericUrl url,
+            List<BearerTokenCache.Challenge> challenges,
+            RegistryCredentials account
+    ) throws IOException {
+        BearerTokenCache.Challenge challenge = challenges.get(0);
+        GenericUrl tokenUrl = new GenericUrl(challenge.realm);
+        if (challenge.service != null) {
+            tokenUrl.set("service", challenge.service);
+        }
+        List<String> scopes = new ArrayList<>();
+        for (BearerTokenCache.Challenge other : challenges) {
+            if (other.scope != null && !scopes.contains(other.scope)) {
+                scopes.add(other.scope);
+            }
+        }
+        if (!scopes.isEmpty()) {
+            tokenUrl.set("scope", scopes);
+        }
+        String authorization = null;
+        if (account != null) {
+            if (!account.isTokenOnly()) {
+                tokenUrl.set("account", account.getUsername());
+            }
+            authorization = account.basicAuthorization();
+        }
+        LOGGER.debug(() -> String.format("Token URL: %s", tokenUrl));
+        long start = System.nanoTime();
+        HttpResponse response = execute("GET", tokenUrl, null, authorization);
+        if (!response.isSuccessStatusCode()) {
+            release(response);
+            throw new HttpResponseException(response);
+        }
+        String tokenResponse = response.parseAsString();
+        metrics.record(url, PollMetrics.Phase.TOKEN_FETCH, start);
+        DockerToken token = fromJsonString(tokenResponse, DockerToken.class);
+        if (token == null || token.getToken() == null) {
+            throw new IOException("No token in response from " + challenge.realm);
+        }
+        return token;
+    }
+
+    /**
+     * The Authorization header for a challenge: a token from the token service, or
+     * an access token as it is if the token service won't take it.
+     */
+    private String bearerFor(
+            GenericUrl url,
+            BearerTokenCache.Challenge challenge,
+            BearerTokenCache tokens,
+            RegistryCredentials account
+    ) throws IOException {
+        try {
+            return "Bearer " + renewToken(url, challenge, tokens, account);
+        } catch (HttpResponseException ex) {
+            boolean refused = ex.getStatusCode() == 401 || ex.getStatusCode() == 403;
+            if (account == null || !account.isTokenOnly() || !refused) {
+                throw ex;
+            }
+            LOGGER.debug(() -> String.format("Token service refused the access token for %s, sending it as it is", url));
+            rawTokenAccounts.add(sessionOf(url, account));
+            return account.bearerAuthorization();
+        }
+    }
+
+    private HttpResponse getUrl(GenericUrl url, RegistryCredentials account) throws IOException {
+        return getUrl("GET", url, null, account);
+    }
+
+    /**
+     * Requests a URL as the account of the repository being polled, or anonymously
+     * if it has none. Each account has its own tokens for each registry.
+     */
+    private HttpResponse getUrl(String method, GenericUrl url, HttpHeaders headers, RegistryCredentials account) throws IOException {
+        String session = sessionOf(url, account);
+        BearerTokenCache tokens = session == null ? tokenCache : sessions.computeIfAbsent(session, key -> new BearerTokenCache());
+        String resource = BearerTokenCache.resourceOf(url);
+        String cachedToken = null;
+        String authorization = null;
+        if (session != null && rawTokenAccounts.contains(session)) {
+            authorization = account.bearerAuthorization();
+        } else if (session != null && basicAccounts.contains(session)) {
+            authorization = account.basicAuthorization();
+        } else {
+            cachedToken = tokens.tokenFor(resource);
+            BearerTokenCache.Challenge known = tokens.challengeFor(resource);
+            if (cachedToken != null) {
+                authorization = "Bearer " + cachedToken;
+            } else if (known != null) {
+                // Renewed up front, rather than after being turned away with a challenge again.
+                authorization = bearerFor(url, known, tokens, account);
+            }
+        }
+        long start = System.nanoTime();
+        HttpResponse response = execute(method, url, headers, authorization);
+        metrics.record(url, authorization == null ? PollMetrics.Phase.ANONYMOUS_GET : PollMetrics.Phase.AUTHENTICATED_GET, start);
 
-        LOGGER.info(String.format("HTTP GET URL: %s %s", url.toString(), response.getStatusCode()));
-        if (response.isSuccessStatusCode()) {
+        int status = response.getStatusCode();
+        LOGGER.debug(() -> String.format("HTTP %s URL: %s %s", method, url, status));
+        if (isUsable(response)) {
             return response;
         } 
 
         if (response.getStatusCode() == 401) {
+            if (cachedToken != null) {
+                LOGGER.debug(() -> String.format("Cached token rejected for %s", resource));
+                tokens.invalidate(resource);
+            }
             String authenticate = response.getHeaders().getAuthenticate();
-            LOGGER.info(String.format("WWW-Authenticate: %s", authenticate));
-            if (authenticate != null) {
-                Matcher matcher = Pattern
-                     .compile("realm=\"([^\"]+)\"", Pattern.CASE_INSENSITIVE)
-                     .matcher(authenticate);
-                
-                matcher.find();                
-                String tokenUrl = matcher.group(1);
-                LOGGER.info(String.format("Token URL: %s", tokenUrl));
-
-                String tokenResponse = transport
-                    .createRequestFactory()
-                    .buildGetRequest(new GenericUrl(tokenUrl))
-                    .execute()
-                    .parseAsString();
-
-                Map<String, String> tokenMap = new GsonBuilder().create().fromJson(
-                    tokenResponse, 
-                    new TypeToken<Map<String, String>>(){}.getType()
-                );
-
-                request = transport.createRequestFactory(req -> 
-                    req.getHeaders().setAuthorization(
-                        "Bearer " + tokenMap.get("token")
-                    )
-                ).buildGetRequest(url);
-
-                return request.execute();
+            LOGGER.debug(() -> String.format("WWW-Authenticate: %s", authenticate));
+            BearerTokenCache.Challenge challenge = BearerTokenCache.Challenge.parse(authenticate);
+            String retry = null;
+            if (challenge != null) {
+                release(response);
+                String token = tokens.tokenFor(challenge);
+                retry = token == null || ("Bearer " + token).equals(authorization)
+                        ? bearerFor(url, challenge, tokens, account)
+                        : "Bearer " + token;
+                tokens.bind(resource, challenge);
+            } else if (account != null && isBasicChallenge(authenticate) && !basicAccounts.contains(session)) {
+                release(response);
+                basicAccounts.add(session);
+                retry = account.basicAuthorization();
+            }
+            // What was just turned away isn't tried again.
+            if (retry != null && !retry.equals(authorization)) {
+                start = System.nanoTime();
+                response = execute(method, url, headers, retry);
+                metrics.record(url, PollMetrics.Phase.AUTHENTICATED_GET, start);
+                if (isUsable(response)) {
+                    return response;
+                }
             }
         }
         
     	throw new HttpResponseException(response);
     }
 
-    private CheckConnectionResultMessage UrlChecker(GenericUrl url, String what) {
-        LOGGER.info(String.format("Checking URL: %s", url.toString()));
+    private static boolean isBasicChallenge(String authenticate) {
+        return authenticate != null && authenticate.regionMatches(true, 0, "Basic", 0, 5);
+    }
+
+    /**
+     * The digest of a tag's manifest, from a HEAD request, or null if the registry
+     * doesn't say.
+     */
+    String ManifestDigestFetcher(GenericUrl manifestUrl, RegistryCredentials account) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(MANIFEST_MEDIA_TYPES);
+        HttpResponse response = getUrl("HEAD", manifestUrl, headers, account);
+        try {
+            return response.getHeaders().getFirstHeaderStringValue("Docker-Content-Digest");
+        } finally {
+            release(response);
+        }
+    }
+
+    // Closing the content, rather than disconnecting, hands the connection back to the pool.
+    private static void release(HttpResponse response) {
         try {
-            HttpResponse response = getUrl(url);
+            response.ignore();
+        } catch (IOException ex) {
+            try {
+                response.disconnect();
+            } catch (IOException ignored) {
+                // Nothing more we can do
+            }
+        }
+    }
+
+    private CheckConnectionResultMessage UrlChecker(GenericUrl url, String what, RegistryCredentials account) {
+        LOGGER.info(() -> String.format("Checking URL: %s", url));
+        try {
+            HttpResponse response = getUrl(url, account);
+            release(response);
             HttpHeaders headers = response.getHeaders();
             String dockerHeader = "docker-distribution-api-version";
             String message;
@@ -135,18 +405,107 @@ class PackageRepositoryPoller {
     }
 
     List<String> TagFetcher(GenericUrl url) {
+        List<String> tags = new ArrayList<>();
         try {
-            LOGGER.info(String.format("Fetch tags for %s", url.toString()));
-            String tagResponse = getUrl(url).parseAsString();          
-            DockerTagsList tagsList = fromJsonString(tagResponse, DockerTagsList.class);
-            LOGGER.info(String.format("Got tags: %s", tagsList.getTags().toString()));
-            return tagsList.getTags();
+            TagFetcher(url, null, 0, tags::add);
+            LOGGER.debug(() -> String.format("Got %d tags", tags.size()));
+            return tags;
         } catch (IOException ex) {
-            LOGGER.warn("Got no tags!");
+            LOGGER.warnLimited(url.build(), () -> String.format("Got no tags for %s: %s", url, ex.getMessage()));
             return Collections.emptyList();
         }
     }
 
+    /**
+     * Streams all tags of an image to the consumer, following the registry's
+     * Link: <...>; rel="next" paging. A positive page size is sent as n=.
+     */
+    int TagFetcher(GenericUrl url, RegistryCredentials account, int pageSize, Consumer<String> consumer) throws IOException {
+        return TagFetcher(url, account, pageSize, null, consumer).getCount();
+    }
+
+    /**
+     * As above, but with If-None-Match for the given ETag. If the registry answers
+     * 304 Not Modified, no tags are passed to the consumer.
+     */
+    FetchedTags TagFetcher(
+            GenericUrl url,
+            RegistryCredentials account,
+            int pageSize,
+            String etag,
+            Consumer<String> consumer
+    ) throws IOException {
+        LOGGER.debug(() -> String.format("Fetch tags for %s", url));
+        return fetchList(url, account, pageSize, etag, "tags", consumer);
+    }
+
+    // Tag lists and the catalog are paged the same way.
+    private FetchedTags fetchList(
+            GenericUrl url,
+            RegistryCredentials account,
+            int pageSize,
+            String etag,
+            String field,
+            Consumer<String> consumer
+    ) throws IOException {
+        GenericUrl pageUrl = url.clone();
+        if (pageSize > 0) {
+            pageUrl.set("n", pageSize);
+        }
+        HttpHeaders headers = null;
+        if (etag != null) {
+            headers = new HttpHeaders().setIfNoneMatch(etag);
+        }
+        Set<String> fetched = new HashSet<>();
+        int count = 0;
+        String firstEtag = null;
+        boolean paged = false;
+        while (pageUrl != null && fetched.add(pageUrl.build())) {
+            HttpResponse response = getUrl("GET", pageUrl, fetched.size() == 1 ? headers : null, account);
+            try {
+                if (response.getStatusCode() == 304) {
+                    LOGGER.debug(() -> String.format("Not modified: %s", url));
+                    return FetchedTags.notModified(etag);
+                }
+                if (fetched.size() == 1) {
+                    firstEtag = response.getHeaders().getETag();
+                }
+                // The consumer runs inside the read, so streamed selection is included here.
+                long start = System.nanoTime();
+                try (Reader reader = new InputStreamReader(response.getContent(), charsetOf(response))) {
+                    count += TagListReader.read(reader, field, consumer);
+                }
+                metrics.record(pageUrl, PollMetrics.Phase.JSON_PARSE, start);
+            } finally {
+                release(response);
+            }
+            pageUrl = nextPage(pageUrl, response.getHeaders().getFirstHeaderStringValue("Link"));
+            paged |= pageUrl != null;
+        }
+        // The ETag of the first page says nothing about the pages after it.
+        return new FetchedTags(count, paged ? null : firstEtag);
+    }
+
+    // JSON is UTF-8 unless the registry says otherwise.
+    private static Charset charsetOf(HttpResponse response) {
+        HttpMediaType mediaType = response.getMediaType();
+        if (mediaType == null || mediaType.getCharsetParameter() == null) {
+            return StandardCharsets.UTF_8;
+        }
+        return mediaType.getCharsetParameter();
+    }
+
+    static GenericUrl nextPage(GenericUrl url, String link) {
+        if (link == null) {
+            return null;
+        }
+        Matcher matcher = NEXT_LINK.matcher(link);
+        if (!matcher.find()) {
+            return null;
+        }
+        return new GenericUrl(url.toURL(matcher.group(1)));
+    }
+
     public CheckConnectionResultMessage checkConnectionToRepository(
             PackageMaterialProperties repositoryConfiguration
     ) {
@@ -155,17 +514,87 @@ class PackageRepositoryPoller {
         if (validationResultMessage.failure()) {
             return new CheckConnectionResultMessage(CheckConnectionResultMessage.STATUS.FAILURE, validationResultMessage.getMessages());
         }
+        connections.configure(repositoryConfiguration);
         String dockerRegistryUrl = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value();
-        return UrlChecker(new GenericUrl(dockerRegistryUrl), "registry");
+        CheckConnectionResultMessage result = UrlChecker(
+                new GenericUrl(dockerRegistryUrl), "registry", RegistryCredentials.of(repositoryConfiguration));
+        if (!result.success() || getNumber(repositoryConfiguration, Constants.DOCKER_CATALOG_PARALLELISM) == 0) {
+            return result;
+        }
+        List<String> messages = new ArrayList<>(result.getMessages());
+        try {
+            CatalogScan scan = scanCatalog(repositoryConfiguration);
+            messages.add(scan.toString());
+            return new CheckConnectionResultMessage(CheckConnectionResultMessage.STATUS.SUCCESS, messages);
+        } catch (IOException ex) {
+            messages.add("Could not scan the catalog. [" + ex.getMessage() + "]");
+            return new CheckConnectionResultMessage(CheckConnectionResultMessage.STATUS.FAILURE, messages);
+        }
+    }
+
+    /**
+     * Lists all images of the registry from /_catalog and fetches their tag lists,
+     * at most the configured number at a time, into the shared tag list cache. They
+     * only go in where there's room, so they never evict the lists of polled images.
+     */
+    CatalogScan scanCatalog(PackageMaterialProperties repositoryConfiguration) throws IOException {
+        long start = System.nanoTime();
+        String registryUrl = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value();
+        int pageSize = getTagPageSize(repositoryConfiguration);
+        List<String> images = new ArrayList<>();
+        RegistryCredentials account = RegistryCredentials.of(repositoryConfiguration);
+        fetchList(new GenericUrl(catalogUrl(repositoryConfiguration)), account, pageSize, null, "repositories", images::add);
+
+        int parallelism = Math.max(1, Math.min(images.size(), getNumber(repositoryConfiguration, Constants.DOCKER_CATALOG_PARALLELISM)));
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "docker-poller-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<TagList>> fetches = new ArrayList<>();
+            for (String image : images) {
+                GenericUrl url = new GenericUrl(registryUrl + image + "/tags/list");
+                fetches.add(executor.submit(() -> {
+                    TagList tags = fetchTagList(url, account, pageSize);
+                    tagListCache.offer(RegistryCredentials.keyOf(url.build(), account), tags);
+                    return tags;
+                }));
+            }
+            int tags = 0;
+            int failed = 0;
+            for (int i = 0; i < fetches.size(); i++) {
+                try {
+                    tags += fetches.get(i).get().size();
+                } catch (ExecutionException e) {
+                    failed++;
+                    String image = images.get(i);
+                    LOGGER.debug(() -> String.format("No tags for %s in catalog scan: %s", image, e.getCause()));
+                }
+            }
+            CatalogScan scan = new CatalogScan(images.size(), tags, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            LOGGER.info(() -> String.format("Scanned %s: %s", registryUrl, scan));
+            return scan;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Catalog scan interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String catalogUrl(PackageMaterialProperties repositoryConfiguration) {
+        return repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value() + "_catalog";
     }
 
     public CheckConnectionResultMessage checkConnectionToPackage(
             PackageMaterialProperties packageConfiguration,
             PackageMaterialProperties repositoryConfiguration
     ) {
+        connections.configure(repositoryConfiguration);
         String dockerPackageUrl =
                 getDockerPackageUrl(packageConfiguration, repositoryConfiguration);
-        return UrlChecker(new GenericUrl(dockerPackageUrl), "image");
+        return UrlChecker(new GenericUrl(dockerPackageUrl), "image", RegistryCredentials.of(repositoryConfiguration));
     }
 
     private String getDockerPackageUrl(
@@ -177,6 +606,7 @@ class PackageRepositoryPoller {
                 "/tags/list";
     }
 
+    // The original sort key, kept as the reference TagVersionComparator is checked against.
     static String expandNums(String versionString) {
         Pattern p = Pattern.compile("[0-9]+");
         Matcher m = p.matcher(versionString);
@@ -190,10 +620,8 @@ class PackageRepositoryPoller {
         return sb.toString();
     }
 
-    private static String biggest(String first, String second) {
-        String firstComp = expandNums(first);
-        String secondComp = expandNums(second);
-        if (firstComp.compareTo(secondComp) > 0) {
+    static String biggest(String first, String second) {
+        if (TagVersionComparator.INSTANCE.compare(first, second) > 0) {
             return first;
         } else {
             return second;
@@ -204,37 +632,686 @@ class PackageRepositoryPoller {
             PackageMaterialProperties packageConfiguration,
             PackageMaterialProperties repositoryConfiguration
     ) {
-        LOGGER.info("getLatestRevision");
+        LOGGER.debug(() -> "getLatestRevision");
+        return pollHere(() -> latestRevision(packageConfiguration, repositoryConfiguration, null),
+                repositoryConfiguration, getDockerPackageUrl(packageConfiguration, repositoryConfiguration));
+    }
+
+    /**
+     * The latest revision of a package, polled on the poller's own threads. The
+     * future fails with a TimeoutException if the poll takes longer than the
+     * repository allows, and cancelling it abandons the poll.
+     */
+    public CompletableFuture<PackageRevisionMessage> getLatestRevisionAsync(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration
+    ) {
+        return runner.submit(
+                () -> latestRevision(packageConfiguration, repositoryConfiguration, null),
+                getPollTimeoutMillis(repositoryConfiguration));
+    }
+
+    // Polls on the calling thread; one that was given up on finds no revision.
+    private PackageRevisionMessage pollHere(
+            Supplier<PackageRevisionMessage> poll,
+            PackageMaterialProperties repositoryConfiguration,
+            String url
+    ) {
+        try {
+            return runner.run(poll, getPollTimeoutMillis(repositoryConfiguration));
+        } catch (TimeoutException e) {
+            LOGGER.warnLimited(url, () -> String.format("Gave up polling %s: %s", url, e.getMessage()));
+            metrics.count(new GenericUrl(url), PollMetrics.Counter.ERRORS, 1);
+            return new PackageRevisionMessage();
+        }
+    }
+
+    private PackageRevisionMessage latestRevision(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            PackageRevisionMessage previous
+    ) {
+        connections.configure(repositoryConfiguration);
         GenericUrl url = new GenericUrl(getDockerPackageUrl(packageConfiguration, repositoryConfiguration));
-        List<String> tags = TagFetcher(url);
         String filter = packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value();
-        if (filter.equals("")) {
-            filter = ".*";
-        }
+        List<String> platforms = getRequiredPlatforms(packageConfiguration);
+        TagOrder order = getTagOrder(packageConfiguration);
+        RegistryCredentials account = RegistryCredentials.of(repositoryConfiguration);
+        // A tag list that hasn't changed says nothing about platforms pushed since.
+        boolean conditional = isConditionalPolling(repositoryConfiguration) && platforms.isEmpty();
+        metrics.count(url, PollMetrics.Counter.POLLS, 1);
+        long pollStart = System.nanoTime();
 
         try {
-            Pattern pattern = Pattern.compile(filter);
+            int candidates = candidatesFor(platforms, order);
+            LatestTagSelector selector = new LatestTagSelector(TagFilter.compile(filter), order, candidates);
+            // With an index, tags are collected first, and only those the filter hasn't seen are selected from.
+            TagIndex index = tagIndexes == null ? null : tagIndexes.get(RegistryCredentials.keyOf(url.build(), account));
+            TagIndex.Update update = index == null ? null : index.update();
+            // Streamed tags go straight to the selector, without a fingerprint. Only a list that is held
+            // anyway, cached or indexed, is checked against the last poll's selection before it's selected from.
+            TagFingerprint fingerprint = update == null ? null : new TagFingerprint();
+            Consumer<String> tagSink = update == null ? selector : fingerprint.andThen(update);
+            TagList cachedTags = null;
 
-            List<Object> matching = tags.stream().filter(pattern.asPredicate()).collect(Collectors.toList());
+            String etag = null;
+            if (conditional && previous != null && previous.getDataFor(Constants.DOCKER_MANIFEST_DIGEST) != null) {
+                etag = previous.getDataFor(Constants.DOCKER_TAG_LIST_ETAG);
+            }
+            long cacheTtl = getTagCacheTtlMillis(repositoryConfiguration);
+            FetchedTags fetched;
+            if (cacheTtl > 0) {
+                cachedTags = getTags(url, repositoryConfiguration);
+                fingerprint = cachedTags.fingerprint();
+                if (update != null) {
+                    update.acceptAll(cachedTags.asList());
+                }
+                fetched = new FetchedTags(cachedTags.size(), cachedTags.getEtag());
+            } else {
+                fetched = TagFetcher(url, account, getTagPageSize(repositoryConfiguration), etag, tagSink);
+            }
+            if (fetched.isNotModified()) {
+                metrics.count(url, PollMetrics.Counter.NOT_MODIFIED, 1);
+                String digest = getManifestDigest(packageConfiguration, repositoryConfiguration, previous.getRevision());
+                if (previous.getDataFor(Constants.DOCKER_MANIFEST_DIGEST).equals(digest)) {
+                    LOGGER.info(() -> String.format("Polled %s: %s is unchanged, %d ms",
+                            url, previous.getRevision(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pollStart)));
+                    LOGGER.recovered(url.build());
+                    return previous;
+                }
+                if (index != null) {
+                    update = index.update();
+                    fingerprint = new TagFingerprint();
+                    tagSink = fingerprint.andThen(update);
+                }
+                fetched = TagFetcher(url, account, getTagPageSize(repositoryConfiguration), null, tagSink);
+            }
+            if (update != null) {
+                update.commit();
+            }
+            String selectionKey = SelectionMemo.keyOf(filter, order, candidates);
+            boolean streamed = cachedTags == null && update == null;
+            String imageKey = RegistryCredentials.keyOf(url.build(), account);
+            LatestTagSelector unchanged = streamed ? null : selections.get(imageKey, fingerprint, selectionKey);
+            if (unchanged != null) {
+                LOGGER.debug(() -> String.format("Tags of %s are unchanged", url));
+                metrics.count(url, PollMetrics.Counter.UNCHANGED_TAGS, 1);
+                selector = unchanged;
+            } else if (!streamed) {
+                long start = System.nanoTime();
+                if (update != null) {
+                    update.select(packageKey(packageConfiguration), selector);
+                } else {
+                    LatestTagSelector.selectAll(cachedTags.asList(), selector);
+                }
+                metrics.record(url, PollMetrics.Phase.TAG_SELECTION, start);
+                selections.put(imageKey, fingerprint, selectionKey, selector);
+            }
+            metrics.count(url, PollMetrics.Counter.TAGS, fetched.getCount());
+            metrics.count(url, PollMetrics.Counter.MATCHING_TAGS, selector.getMatching());
 
-            if (matching.isEmpty()) {
-                LOGGER.info("Found no matching revision.");
+            String latest = selector.getLatest();
+            String digest = null;
+            if (latest != null) {
+                Candidate chosen = choose(url, packageConfiguration, repositoryConfiguration, selector, order, platforms);
+                latest = chosen == null ? null : chosen.tag;
+                digest = chosen == null ? null : chosen.digest;
+            }
+            LOGGER.pollSummary(url, fetched.getCount(), selector.getMatching(), latest, pollStart);
+            LOGGER.recovered(url.build());
+            if (latest == null) {
                 return new PackageRevisionMessage();
             }
 
-            String latest = "";
-            for (Object tag: matching) {
-                latest = biggest(latest, tag.toString());
+            PackageRevisionMessage revision = revisionFor(packageConfiguration, repositoryConfiguration, latest, digest, fetched.getEtag());
+            lastGoodRevisions.put(lastGoodKey(url, account, packageKey(packageConfiguration)), revision);
+            // A bigger tag still waiting for platforms, or pushed before the latest, has to be looked at again next time.
+            if (update != null && latest.equals(selector.getLatest())) {
+                update.setWinner(packageKey(packageConfiguration), latest,
+                        revision.getDataFor(Constants.DOCKER_MANIFEST_DIGEST), selector.getMatching());
             }
-
-            LOGGER.info(String.format("Latest revision is: %s", latest));
-            return new PackageRevisionMessage(latest, new Date(), "docker", null,null);
+            return revision;
 
         } catch (PatternSyntaxException e) {
             String message = String.format("Invalid docker tag filter '%s' used for image '%s': %s", filter, url, e.getMessage());
             LOGGER.error(message);
             throw new PatternSyntaxException(message, e.getPattern(), e.getIndex());
+        } catch (IOException ex) {
+            LOGGER.warnLimited(url.build(), () -> String.format("Got no tags for %s: %s", url, ex.getMessage()));
+            metrics.count(url, PollMetrics.Counter.ERRORS, 1);
+            return lastGoodRevision(url, account, packageKey(packageConfiguration), ex);
+        } finally {
+            metrics.exportIfDue();
+        }
+    }
+
+    /**
+     * Starts the webhook receiver, if one is configured. Not done by the constructor,
+     * so that the receiver only gets to call a poller that is fully built.
+     */
+    synchronized void listenForWebhooks() {
+        if (webhooks == null) {
+            webhooks = WebhookReceiver.configured(this::onTagEvent);
+        }
+    }
+
+    /**
+     * Stops the webhook receiver and every thread the poller has started. Polls
+     * still running are interrupted.
+     */
+    public synchronized void shutdown() {
+        if (webhooks != null) {
+            webhooks.stop();
+            webhooks = null;
+        }
+        prefetcher.shutdown();
+        runner.shutdown();
+        if (detailsExecutor != null) {
+            detailsExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies a push or delete from a webhook to the cached tag lists of that image,
+     * on any registry, or only on the one the event names if we know it. Images
+     * without a cached list are left alone; their next poll fetches the whole list.
+     */
+    void onTagEvent(TagEvent event) {
+        List<String> matching = new ArrayList<>();
+        for (String key : tagListCache.keys()) {
+            String url = RegistryCredentials.urlOf(key);
+            if (url.endsWith("/tags/list") && PollMetrics.imageOf(new GenericUrl(url)).equals(event.getRepository())) {
+                matching.add(key);
+            }
+        }
+        boolean knownHost = matching.stream().anyMatch(key -> hostOf(key).equals(event.getHost()));
+        if (knownHost) {
+            matching.removeIf(key -> !hostOf(key).equals(event.getHost()));
         }
+        int updated = tagListCache.update(matching::contains,
+                tags -> event.isDeleted() ? tags.without(event.getTag()) : tags.with(event.getTag()));
+        metrics.count(knownHost ? event.getHost() : "", event.getRepository(), PollMetrics.Counter.WEBHOOK_EVENTS, 1);
+        LOGGER.info(() -> String.format("Webhook %s updated %d tag lists", event, updated));
+    }
+
+    private static String hostOf(String key) {
+        return PollMetrics.registryOf(new GenericUrl(RegistryCredentials.urlOf(key)));
+    }
+
+    // The digest of the tag is looked up if it's needed and not known already.
+    private PackageRevisionMessage revisionFor(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String latest,
+            String digest,
+            String etag
+    ) {
+        boolean conditional = isConditionalPolling(repositoryConfiguration);
+        boolean withMetadata = isImageMetadataEnabled(repositoryConfiguration);
+        if (digest == null && (conditional || withMetadata)) {
+            digest = getManifestDigest(packageConfiguration, repositoryConfiguration, latest);
+        }
+        ImageMetadata metadata = withMetadata && digest != null
+                ? getImageMetadata(packageConfiguration, repositoryConfiguration, digest)
+                : null;
+
+        PackageRevisionMessage revision;
+        if (metadata == null) {
+            revision = new PackageRevisionMessage(latest, new Date(), "docker", null,null);
+        } else {
+            revision = new PackageRevisionMessage(
+                    latest,
+                    metadata.getCreated() != null ? metadata.getCreated() : new Date(),
+                    metadata.getAuthor() != null ? metadata.getAuthor() : "docker",
+                    metadata.getRevision(),
+                    metadata.getSource());
+            if (metadata.getRevision() != null) {
+                revision.addData(Constants.DOCKER_IMAGE_REVISION, metadata.getRevision());
+            }
+            if (metadata.getSource() != null) {
+                revision.addData(Constants.DOCKER_IMAGE_SOURCE, metadata.getSource());
+            }
+        }
+        if (digest != null) {
+            revision.addData(Constants.DOCKER_MANIFEST_DIGEST, digest);
+        }
+        if (conditional && etag != null) {
+            revision.addData(Constants.DOCKER_TAG_LIST_ETAG, etag);
+        }
+        return revision;
+    }
+
+    // Details are nice to have; without them the revision is still good.
+    private ImageMetadata getImageMetadata(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String digest
+    ) {
+        String imageUrl = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value() +
+                packageConfiguration.getProperty(Constants.DOCKER_IMAGE).value();
+        try {
+            RegistryCredentials account = RegistryCredentials.of(repositoryConfiguration);
+            return imageMetadataCache.get(digest, () -> fetchImageMetadata(imageUrl, digest, account));
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warnLimited(imageUrl + "@" + digest,
+                    () -> String.format("Could not get details of %s@%s: %s", imageUrl, digest, ex.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Reads the manifest and config blob of an image. For a multi-platform image
+     * the linux/amd64 manifest is used, or the first one if there is none.
+     */
+    ImageMetadata fetchImageMetadata(String imageUrl, String digest, RegistryCredentials account) throws IOException {
+        String manifest = getString(new GenericUrl(imageUrl + "/manifests/" + digest), MANIFEST_MEDIA_TYPES, account);
+        String configDigest = ImageMetadata.configDigestOf(manifest);
+        if (configDigest == null) {
+            ImageMetadata schema1 = ImageMetadata.fromSchema1(digest, manifest);
+            if (schema1 != null) {
+                return schema1;
+            }
+            String platformDigest = ImageMetadata.defaultManifestOf(manifest);
+            if (platformDigest == null) {
+                throw new IOException("No image config in manifest " + digest);
+            }
+            manifest = getString(new GenericUrl(imageUrl + "/manifests/" + platformDigest), MANIFEST_MEDIA_TYPES, account);
+            configDigest = ImageMetadata.configDigestOf(manifest);
+            if (configDigest == null) {
+                throw new IOException("No image config in manifest " + platformDigest);
+            }
+        }
+        String config = getString(new GenericUrl(imageUrl + "/blobs/" + configDigest), null, account);
+        return ImageMetadata.fromConfig(digest, config);
+    }
+
+    private static class Candidate {
+        final String tag;
+        final String digest;
+        final boolean ready;
+
+        Candidate(String tag, String digest, boolean ready) {
+            this.tag = tag;
+            this.digest = digest;
+            this.ready = ready;
+        }
+    }
+
+    /**
+     * The latest of the tags a selector kept: the biggest one, or the one pushed most
+     * recently, that has images for all the platforms. Null if none of them has.
+     */
+    private Candidate choose(
+            GenericUrl url,
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            LatestTagSelector selector,
+            TagOrder order,
+            List<String> platforms
+    ) throws IOException {
+        List<String> tags = selector.getCandidates();
+        if (order == TagOrder.PUSHED) {
+            List<Candidate> ranked = byPushTime(packageConfiguration, repositoryConfiguration, tags);
+            if (platforms.isEmpty()) {
+                return ranked.get(0);
+            }
+            tags = new ArrayList<>();
+            for (Candidate candidate : ranked) {
+                tags.add(candidate.tag);
+            }
+        } else if (platforms.isEmpty()) {
+            return new Candidate(selector.getLatest(), null, true);
+        }
+        Candidate ready = firstReady(packageConfiguration, repositoryConfiguration, tags, platforms);
+        if (ready == null || !ready.tag.equals(tags.get(0))) {
+            String waiting = tags.get(0);
+            LOGGER.info(() -> String.format("Polled %s: %s does not have all of %s yet", url, waiting, platforms));
+        }
+        return ready;
+    }
+
+    /**
+     * The tags, most recently built first by the creation time in their image
+     * configs, all looked up at once. Tags without a known time come last, in
+     * the order they were given.
+     */
+    private List<Candidate> byPushTime(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            List<String> tags
+    ) throws IOException {
+        Map<String, String> digests = new ConcurrentHashMap<>();
+        Map<String, Date> created = new ConcurrentHashMap<>();
+        List<Callable<Void>> lookups = new ArrayList<>();
+        for (String tag : tags) {
+            lookups.add(() -> {
+                String digest = getManifestDigest(packageConfiguration, repositoryConfiguration, tag);
+                if (digest == null) {
+                    return null;
+                }
+                digests.put(tag, digest);
+                ImageMetadata metadata = getImageMetadata(packageConfiguration, repositoryConfiguration, digest);
+                if (metadata != null && metadata.getCreated() != null) {
+                    created.put(tag, metadata.getCreated());
+                }
+                return null;
+            });
+        }
+        lookUpAll(lookups);
+        List<String> ranked = new ArrayList<>(tags);
+        ranked.sort(Comparator.comparing(created::get, Comparator.nullsLast(Comparator.reverseOrder())));
+        List<Candidate> candidates = new ArrayList<>();
+        for (String tag : ranked) {
+            candidates.add(new Candidate(tag, digests.get(tag), true));
+        }
+        return candidates;
+    }
+
+    /**
+     * The biggest of the candidate tags that has images for all the platforms, or
+     * null if none has. The biggest tag usually has them all; only if it doesn't
+     * are the other candidates looked at: their digests all at once, and then, from
+     * the first one whose platforms aren't known yet, their platforms all at once.
+     * Whatever is still running when the answer is found is stopped.
+     */
+    private Candidate firstReady(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            List<String> candidates,
+            List<String> platforms
+    ) throws IOException {
+        String imageUrl = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value() +
+                packageConfiguration.getProperty(Constants.DOCKER_IMAGE).value();
+        RegistryCredentials account = RegistryCredentials.of(repositoryConfiguration);
+        Candidate first = candidate(imageUrl, account, candidates.get(0), platforms);
+        if (first.ready) {
+            return first;
+        }
+        List<String> tags = candidates.subList(1, candidates.size());
+        List<Detail<String>> digests = new ArrayList<>();
+        List<Detail<Candidate>> checks = new ArrayList<>();
+        try {
+            for (String tag : tags) {
+                digests.add(new Detail<>(() -> ManifestDigestFetcher(new GenericUrl(imageUrl + "/manifests/" + tag), account)));
+            }
+            for (int i = 0; i < tags.size(); i++) {
+                Candidate known = knownCandidate(tags.get(i), digests.get(i).get(), platforms);
+                if (known == null) {
+                    for (int j = i; j < tags.size(); j++) {
+                        String tag = tags.get(j);
+                        String digest = digests.get(j).get();
+                        checks.add(new Detail<>(() -> candidate(imageUrl, account, tag, digest, platforms)));
+                    }
+                    for (Detail<Candidate> check : checks) {
+                        Candidate candidate = check.get();
+                        if (candidate.ready) {
+                            return candidate;
+                        }
+                    }
+                    return null;
+                }
+                if (known.ready) {
+                    return known;
+                }
+            }
+            return null;
+        } finally {
+            digests.forEach(Detail::stop);
+            checks.forEach(Detail::stop);
+        }
+    }
+
+    // All at once on the details threads; whatever is still running if the poll is given up on is stopped.
+    private <T> List<T> lookUpAll(List<Callable<T>> lookups) throws IOException {
+        List<Detail<T>> details = new ArrayList<>();
+        try {
+            for (Callable<T> lookup : lookups) {
+                details.add(new Detail<>(lookup));
+            }
+            List<T> results = new ArrayList<>();
+            for (Detail<T> detail : details) {
+                results.add(detail.get());
+            }
+            return results;
+        } finally {
+            details.forEach(Detail::stop);
+        }
+    }
+
+    /**
+     * Work for a poll on a details thread. Stopping it drops it if it hasn't started,
+     * and otherwise interrupts it and waits for it, so that nothing of a poll is
+     * left running after it.
+     */
+    private class Detail<T> {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final Future<T> future;
+
+        Detail(Callable<T> work) {
+            future = detailsExecutor().submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return work.call();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        T get() throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Poll abandoned");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        void stop() {
+            if (claimed.compareAndSet(false, true)) {
+                future.cancel(false);
+                return;
+            }
+            future.cancel(true);
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Candidate candidate(String imageUrl, RegistryCredentials account, String tag, List<String> platforms) throws IOException {
+        String digest = ManifestDigestFetcher(new GenericUrl(imageUrl + "/manifests/" + tag), account);
+        return candidate(imageUrl, account, tag, digest, platforms);
+    }
+
+    private Candidate candidate(
+            String imageUrl,
+            RegistryCredentials account,
+            String tag,
+            String digest,
+            List<String> platforms
+    ) throws IOException {
+        Set<String> available = digest == null
+                ? fetchPlatforms(imageUrl, account, tag)
+                : platformCache.get(digest, () -> fetchPlatforms(imageUrl, account, digest));
+        LOGGER.debug(() -> String.format("%s:%s has %s", imageUrl, tag, available));
+        return new Candidate(tag, digest, ImagePlatforms.covers(available, platforms));
+    }
+
+    // Null unless the platforms of the digest were fetched before.
+    private Candidate knownCandidate(String tag, String digest, List<String> platforms) {
+        Set<String> available = digest == null ? null : platformCache.getIfPresent(digest);
+        return available == null ? null : new Candidate(tag, digest, ImagePlatforms.covers(available, platforms));
+    }
+
+    // Those of a manifest list or index, or else the one of the image's config.
+    private Set<String> fetchPlatforms(String imageUrl, RegistryCredentials account, String reference) throws IOException {
+        try {
+            String manifest = getString(new GenericUrl(imageUrl + "/manifests/" + reference), MANIFEST_MEDIA_TYPES, account);
+            Set<String> platforms = ImagePlatforms.ofIndex(manifest);
+            if (platforms != null) {
+                return platforms;
+            }
+            String configDigest = ImageMetadata.configDigestOf(manifest);
+            if (configDigest == null) {
+                return Collections.emptySet();
+            }
+            return ImagePlatforms.ofConfig(getString(new GenericUrl(imageUrl + "/blobs/" + configDigest), null, account));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unreadable manifest " + reference + " of " + imageUrl, e);
+        }
+    }
+
+    private String getString(GenericUrl url, String accept, RegistryCredentials account) throws IOException {
+        HttpHeaders headers = null;
+        if (accept != null) {
+            headers = new HttpHeaders();
+            headers.setAccept(accept);
+        }
+        HttpResponse response = getUrl("GET", url, headers, account);
+        try {
+            return response.parseAsString();
+        } finally {
+            release(response);
+        }
+    }
+
+    private static String lastGoodKey(GenericUrl url, RegistryCredentials account, String packageKey) {
+        return RegistryCredentials.keyOf(url.build(), account) + " " + packageKey;
+    }
+
+    // Empty, unless the registry is throttling us and we have something to fall back on.
+    private PackageRevisionMessage lastGoodRevision(GenericUrl url, RegistryCredentials account, String packageKey, IOException ex) {
+        PackageRevisionMessage lastGood = lastGoodRevisions.get(lastGoodKey(url, account, packageKey));
+        if (lastGood == null || !RegistryThrottle.isThrottling(ex)) {
+            return new PackageRevisionMessage();
+        }
+        LOGGER.debug(() -> String.format("Serving %s for %s while backing off", lastGood.getRevision(), url));
+        return lastGood;
+    }
+
+    private static String indexKey(String filter) {
+        return filter == null ? "" : filter;
+    }
+
+    private static String selectorKey(PackageMaterialProperties packageConfiguration, int candidates) {
+        String filter = indexKey(packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value());
+        return SelectionMemo.keyOf(filter, getTagOrder(packageConfiguration), candidates);
+    }
+
+    // What decides the latest revision of a package, given its image.
+    private static String packageKey(PackageMaterialProperties packageConfiguration) {
+        String filter = indexKey(packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value());
+        List<String> platforms = getRequiredPlatforms(packageConfiguration);
+        String key = platforms.isEmpty() ? filter : filter + " " + String.join(",", platforms);
+        TagOrder order = getTagOrder(packageConfiguration);
+        return order == TagOrder.NATURAL ? key : key + " " + order;
+    }
+
+    // A missing digest only costs us the conditional request next time.
+    private String getManifestDigest(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String tag
+    ) {
+        GenericUrl manifestUrl = new GenericUrl(
+                repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value() +
+                packageConfiguration.getProperty(Constants.DOCKER_IMAGE).value() +
+                "/manifests/" + tag);
+        try {
+            return ManifestDigestFetcher(manifestUrl, RegistryCredentials.of(repositoryConfiguration));
+        } catch (IOException ex) {
+            LOGGER.warnLimited(manifestUrl.build(), () -> String.format("Could not get digest of %s: %s", manifestUrl, ex.getMessage()));
+            return null;
+        }
+    }
+
+    private static boolean isConditionalPolling(PackageMaterialProperties repositoryConfiguration) {
+        PackageMaterialProperty conditional = repositoryConfiguration.getProperty(Constants.DOCKER_CONDITIONAL_POLLING);
+        return conditional != null && "true".equalsIgnoreCase(conditional.value());
+    }
+
+    private synchronized ExecutorService detailsExecutor() {
+        if (detailsExecutor == null) {
+            detailsExecutor = Executors.newFixedThreadPool(DETAILS_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "docker-image-details");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return detailsExecutor;
+    }
+
+    private static List<String> getRequiredPlatforms(PackageMaterialProperties packageConfiguration) {
+        PackageMaterialProperty platforms = packageConfiguration.getProperty(Constants.DOCKER_REQUIRED_PLATFORMS);
+        return ImagePlatforms.parse(platforms == null ? null : platforms.value());
+    }
+
+    private static TagOrder getTagOrder(PackageMaterialProperties packageConfiguration) {
+        PackageMaterialProperty order = packageConfiguration.getProperty(Constants.DOCKER_TAG_ORDER);
+        return TagOrder.of(order == null ? null : order.value());
+    }
+
+    // Enough tags to fall back on when the biggest one won't do.
+    private static int candidatesFor(List<String> platforms, TagOrder order) {
+        int candidates = platforms.isEmpty() ? 1 : PLATFORM_CANDIDATES;
+        return order == TagOrder.PUSHED ? Math.max(candidates, PUSHED_CANDIDATES) : candidates;
+    }
+
+    private static boolean isImageMetadataEnabled(PackageMaterialProperties repositoryConfiguration) {
+        PackageMaterialProperty metadata = repositoryConfiguration.getProperty(Constants.DOCKER_IMAGE_METADATA);
+        return metadata != null && "true".equalsIgnoreCase(metadata.value());
+    }
+
+    private static int getTagPageSize(PackageMaterialProperties repositoryConfiguration) {
+        return getNumber(repositoryConfiguration, Constants.DOCKER_TAG_PAGE_SIZE);
+    }
+
+    // Tag lists refreshed in the background are good for two intervals, unless the cache time says otherwise.
+    private static long getTagCacheTtlMillis(PackageMaterialProperties repositoryConfiguration) {
+        long cacheTtl = getNumber(repositoryConfiguration, Constants.DOCKER_TAG_CACHE_TTL) * 1000L;
+        return cacheTtl > 0 ? cacheTtl : 2 * getPrefetchIntervalMillis(repositoryConfiguration);
+    }
+
+    private static long getPollTimeoutMillis(PackageMaterialProperties repositoryConfiguration) {
+        return getNumber(repositoryConfiguration, Constants.DOCKER_POLL_TIMEOUT) * 1000L;
+    }
+
+    private static long getPrefetchIntervalMillis(PackageMaterialProperties repositoryConfiguration) {
+        return getNumber(repositoryConfiguration, Constants.DOCKER_PREFETCH_INTERVAL) * 1000L;
+    }
+
+    // Optional numeric properties are 0 when not set.
+    private static int getNumber(PackageMaterialProperties configuration, String key) {
+        PackageMaterialProperty property = configuration.getProperty(key);
+        if (property == null || property.value() == null || property.value().trim().isEmpty()) {
+            return 0;
+        }
+        return Integer.parseInt(property.value().trim());
+    }
+
+    private TagList getCachedTags(GenericUrl url, RegistryCredentials account, int pageSize, long ttlMillis) throws IOException {
+        // Waiting on another material's fetch counts as a hit; only the one that loads misses.
+        boolean[] loaded = {false};
+        TagList tagList = tagListCache.get(RegistryCredentials.keyOf(url.build(), account), ttlMillis, () -> {
+            loaded[0] = true;
+            return fetchTagList(url, account, pageSize);
+        });
+        metrics.count(url, loaded[0] ? PollMetrics.Counter.CACHE_MISSES : PollMetrics.Counter.CACHE_HITS, 1);
+        return tagList;
     }
 
     public PackageRevisionMessage getLatestRevisionSince(
@@ -242,15 +1319,322 @@ class PackageRepositoryPoller {
             PackageMaterialProperties repositoryConfiguration,
             PackageRevisionMessage previous
     ) {
-        LOGGER.info(String.format("getLatestRevisionSince %s", previous.getRevision()));
-        PackageRevisionMessage latest = getLatestRevision(packageConfiguration, repositoryConfiguration);
-        if (biggest(previous.getRevision(), latest.getRevision()).equals(latest.getRevision())) {
-            LOGGER.info(String.format("Latest revision is: %s", latest));
+        LOGGER.debug(() -> String.format("getLatestRevisionSince %s", previous.getRevision()));
+        return pollHere(() -> since(previous, latestRevision(packageConfiguration, repositoryConfiguration, previous),
+                        getTagOrder(packageConfiguration)),
+                repositoryConfiguration, getDockerPackageUrl(packageConfiguration, repositoryConfiguration));
+    }
+
+    public CompletableFuture<PackageRevisionMessage> getLatestRevisionSinceAsync(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            PackageRevisionMessage previous
+    ) {
+        return runner.submit(
+                () -> since(previous, latestRevision(packageConfiguration, repositoryConfiguration, previous),
+                        getTagOrder(packageConfiguration)),
+                getPollTimeoutMillis(repositoryConfiguration));
+    }
+
+    private static PackageRevisionMessage since(PackageRevisionMessage previous, PackageRevisionMessage latest, TagOrder order) {
+        if (latest.getRevision() != null && order.isNewer(previous.getRevision(), latest.getRevision())) {
             return latest;
         } else {
-            LOGGER.info("Found no matching revision.");
+            LOGGER.debug(() -> String.format("Nothing newer than %s", previous.getRevision()));
             return new PackageRevisionMessage();
         }
     }
 
+    /**
+     * The latest revisions of many packages at once, in the order asked for. Packages
+     * of the same image share one fetch of its tag list, and all their filters are
+     * applied in a single pass over it. A package with a previous revision only gets
+     * a newer one, as with getLatestRevisionSince.
+     */
+    public List<PackageRevisionMessage> getLatestRevisions(List<LatestPackageRevisionSinceMessage> packages) {
+        try {
+            return getLatestRevisionsAsync(packages).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * As getLatestRevisions, with the images polled concurrently. An image that
+     * takes longer than its repository allows gets no revisions.
+     */
+    public CompletableFuture<List<PackageRevisionMessage>> getLatestRevisionsAsync(List<LatestPackageRevisionSinceMessage> packages) {
+        PackageRevisionMessage[] revisions = new PackageRevisionMessage[packages.size()];
+        Map<String, List<Integer>> byImage = new LinkedHashMap<>();
+        for (int i = 0; i < packages.size(); i++) {
+            LatestPackageRevisionSinceMessage message = packages.get(i);
+            byImage.computeIfAbsent(batchKey(message), key -> new ArrayList<>()).add(i);
+        }
+        List<CompletableFuture<Void>> polls = new ArrayList<>();
+        for (List<Integer> batch : byImage.values()) {
+            LatestPackageRevisionSinceMessage first = packages.get(batch.get(0));
+            GenericUrl url = new GenericUrl(getDockerPackageUrl(first.getPackageConfiguration(), first.getRepositoryConfiguration()));
+            // Each image has its own array, so one that is given up on can't write into the result.
+            PackageRevisionMessage[] polled = new PackageRevisionMessage[packages.size()];
+            long timeout = getPollTimeoutMillis(packages.get(batch.get(0)).getRepositoryConfiguration());
+            polls.add(runner.submit(() -> {
+                latestRevisions(url, packages, batch, polled);
+                return polled;
+            }, timeout).handle((done, e) -> {
+                if (e != null) {
+                    LOGGER.warnLimited(url.build(), () -> String.format("Gave up polling %s: %s", url, e.getMessage()));
+                    metrics.count(url, PollMetrics.Counter.ERRORS, 1);
+                }
+                for (int i : batch) {
+                    revisions[i] = done == null ? new PackageRevisionMessage() : done[i];
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(polls.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> Arrays.asList(revisions));
+    }
+
+    /**
+     * Packages are only polled together if they use the same image with the same
+     * repository settings, account included, since the first one's are used for all.
+     */
+    private String batchKey(LatestPackageRevisionSinceMessage message) {
+        PackageMaterialProperties repositoryConfiguration = message.getRepositoryConfiguration();
+        String url = getDockerPackageUrl(message.getPackageConfiguration(), repositoryConfiguration);
+        StringBuilder key = new StringBuilder(
+                RegistryCredentials.keyOf(url, RegistryCredentials.of(repositoryConfiguration)));
+        Map<String, PackageMaterialProperty> settings = new TreeMap<>(repositoryConfiguration.getPropertyMap());
+        settings.remove(Constants.DOCKER_USERNAME);
+        settings.remove(Constants.DOCKER_PASSWORD);
+        for (Map.Entry<String, PackageMaterialProperty> setting : settings.entrySet()) {
+            key.append('\n').append(setting.getKey()).append('=').append(setting.getValue().value());
+        }
+        return key.toString();
+    }
+
+    private void latestRevisions(
+            GenericUrl url,
+            List<LatestPackageRevisionSinceMessage> packages,
+            List<Integer> batch,
+            PackageRevisionMessage[] revisions
+    ) {
+        // All packages of a batch have the same repository settings.
+        PackageMaterialProperties repositoryConfiguration = packages.get(batch.get(0)).getRepositoryConfiguration();
+        connections.configure(repositoryConfiguration);
+        RegistryCredentials account = RegistryCredentials.of(repositoryConfiguration);
+        String imageKey = RegistryCredentials.keyOf(url.build(), account);
+        long pollStart = System.nanoTime();
+
+        int candidates = 1;
+        for (int i : batch) {
+            PackageMaterialProperties packageConfiguration = packages.get(i).getPackageConfiguration();
+            candidates = Math.max(candidates,
+                    candidatesFor(getRequiredPlatforms(packageConfiguration), getTagOrder(packageConfiguration)));
+        }
+        // Selectors by their memo keys, which tell filters and orders apart.
+        Map<String, LatestTagSelector> selectors = new LinkedHashMap<>();
+        for (int i : batch) {
+            revisions[i] = new PackageRevisionMessage();
+            metrics.count(url, PollMetrics.Counter.POLLS, 1);
+            PackageMaterialProperties packageConfiguration = packages.get(i).getPackageConfiguration();
+            String filter = indexKey(packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value());
+            TagOrder order = getTagOrder(packageConfiguration);
+            String key = SelectionMemo.keyOf(filter, order, candidates);
+            if (!selectors.containsKey(key)) {
+                try {
+                    selectors.put(key, new LatestTagSelector(TagFilter.compile(filter), order, candidates));
+                } catch (PatternSyntaxException e) {
+                    LOGGER.error(String.format("Invalid docker tag filter '%s' used for image '%s': %s", filter, url, e.getMessage()));
+                }
+            }
+        }
+
+        try {
+            TagList tags = getTags(url, repositoryConfiguration);
+            // One fetch, however many packages share it.
+            metrics.count(url, PollMetrics.Counter.TAGS, tags.size());
+            TagFingerprint fingerprint = tags.fingerprint();
+            List<LatestTagSelector> changed = new ArrayList<>();
+            for (Map.Entry<String, LatestTagSelector> selector : selectors.entrySet()) {
+                LatestTagSelector unchanged = selections.get(imageKey, fingerprint, selector.getKey());
+                if (unchanged != null) {
+                    selector.setValue(unchanged);
+                    metrics.count(url, PollMetrics.Counter.UNCHANGED_TAGS, 1);
+                } else {
+                    changed.add(selector.getValue());
+                }
+            }
+            if (!changed.isEmpty()) {
+                LatestTagSelector[] distinct = changed.toArray(new LatestTagSelector[changed.size()]);
+                long start = System.nanoTime();
+                LatestTagSelector.selectAll(tags.asList(), distinct);
+                metrics.record(url, PollMetrics.Phase.TAG_SELECTION, start);
+                for (Map.Entry<String, LatestTagSelector> selector : selectors.entrySet()) {
+                    selections.put(imageKey, fingerprint, selector.getKey(), selector.getValue());
+                }
+            }
+
+            // Winners are looked up in parallel when that means fetching manifests.
+            Map<Integer, Candidate> chosen = new HashMap<>();
+            Map<String, Supplier<PackageRevisionMessage>> lookups = new LinkedHashMap<>();
+            for (int i : batch) {
+                LatestPackageRevisionSinceMessage message = packages.get(i);
+                LatestTagSelector selector = selectors.get(selectorKey(message.getPackageConfiguration(), candidates));
+                if (selector == null || selector.getLatest() == null) {
+                    continue;
+                }
+                Candidate candidate = choose(url, message.getPackageConfiguration(), repositoryConfiguration, selector,
+                        getTagOrder(message.getPackageConfiguration()), getRequiredPlatforms(message.getPackageConfiguration()));
+                if (candidate != null) {
+                    chosen.put(i, candidate);
+                    lookups.computeIfAbsent(candidate.tag, tag -> () -> revisionFor(
+                            message.getPackageConfiguration(), repositoryConfiguration, tag, candidate.digest, tags.getEtag()));
+                }
+            }
+            Map<String, PackageRevisionMessage> winners = new HashMap<>();
+            List<String> winning = new ArrayList<>(lookups.keySet());
+            if (isImageMetadataEnabled(repositoryConfiguration)) {
+                List<Callable<PackageRevisionMessage>> parallel = new ArrayList<>();
+                for (Supplier<PackageRevisionMessage> lookup : lookups.values()) {
+                    parallel.add(lookup::get);
+                }
+                List<PackageRevisionMessage> found = lookUpAll(parallel);
+                for (int i = 0; i < winning.size(); i++) {
+                    winners.put(winning.get(i), found.get(i));
+                }
+            } else {
+                for (String tag : winning) {
+                    winners.put(tag, lookups.get(tag).get());
+                }
+            }
+
+            for (int i : batch) {
+                LatestPackageRevisionSinceMessage message = packages.get(i);
+                LatestTagSelector selector = selectors.get(selectorKey(message.getPackageConfiguration(), candidates));
+                if (selector == null) {
+                    continue;
+                }
+                metrics.count(url, PollMetrics.Counter.MATCHING_TAGS, selector.getMatching());
+                Candidate candidate = chosen.get(i);
+                LOGGER.pollSummary(url, tags.size(), selector.getMatching(), candidate == null ? null : candidate.tag, pollStart);
+                if (candidate != null) {
+                    PackageRevisionMessage latest = winners.get(candidate.tag);
+                    lastGoodRevisions.put(lastGoodKey(url, account, packageKey(message.getPackageConfiguration())), latest);
+                    revisions[i] = message.getPreviousRevision() == null
+                            ? latest
+                            : since(message.getPreviousRevision(), latest, getTagOrder(message.getPackageConfiguration()));
+                }
+            }
+            LOGGER.recovered(url.build());
+        } catch (IOException ex) {
+            LOGGER.warnLimited(url.build(), () -> String.format("Got no tags for %s: %s", url, ex.getMessage()));
+            metrics.count(url, PollMetrics.Counter.ERRORS, 1);
+            for (int i : batch) {
+                PackageMaterialProperties packageConfiguration = packages.get(i).getPackageConfiguration();
+                PackageRevisionMessage lastGood = lastGoodRevision(url, account, packageKey(packageConfiguration), ex);
+                PackageRevisionMessage previous = packages.get(i).getPreviousRevision();
+                revisions[i] = previous == null || lastGood.getRevision() == null
+                        ? lastGood
+                        : since(previous, lastGood, getTagOrder(packageConfiguration));
+            }
+        } finally {
+            metrics.exportIfDue();
+        }
+    }
+
+    /**
+     * The biggest tags of a package in its tag order, biggest first, with their sort
+     * keys and, if asked for, their manifest digests; what the latest revision is
+     * chosen from. Tags are streamed through a heap of that many, unless the
+     * repository shares tag lists, which are used as they are.
+     */
+    public Map<String, Object> getTopTags(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            int count,
+            boolean withDigests
+    ) throws IOException {
+        if (count > MAX_TOP_TAGS) {
+            throw new IllegalArgumentException("At most " + MAX_TOP_TAGS + " tags can be asked for");
+        }
+        connections.configure(repositoryConfiguration);
+        GenericUrl url = new GenericUrl(getDockerPackageUrl(packageConfiguration, repositoryConfiguration));
+        TagOrder order = getTagOrder(packageConfiguration);
+        TopTags top = new TopTags(
+                TagFilter.compile(packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value()), order, count);
+        int tags;
+        if (getTagCacheTtlMillis(repositoryConfiguration) > 0) {
+            TagList cached = getTags(url, repositoryConfiguration);
+            cached.forEach(top);
+            tags = cached.size();
+        } else {
+            tags = TagFetcher(url, RegistryCredentials.of(repositoryConfiguration), getTagPageSize(repositoryConfiguration), top);
+        }
+
+        List<TopTags.Entry> entries = top.getTop();
+        Map<String, String> digests = new ConcurrentHashMap<>();
+        if (withDigests) {
+            List<Callable<Void>> lookups = new ArrayList<>();
+            for (TopTags.Entry entry : entries) {
+                lookups.add(() -> {
+                    String digest = getManifestDigest(packageConfiguration, repositoryConfiguration, entry.tag);
+                    if (digest != null) {
+                        digests.put(entry.tag, digest);
+                    }
+                    return null;
+                });
+            }
+            lookUpAll(lookups);
+        }
+
+        List<Map<String, String>> ranked = new ArrayList<>();
+        for (TopTags.Entry entry : entries) {
+            Map<String, String> tag = new LinkedHashMap<>();
+            tag.put("tag", entry.tag);
+            tag.put("sort-key", entry.sortKey);
+            if (digests.containsKey(entry.tag)) {
+                tag.put("digest", digests.get(entry.tag));
+            }
+            ranked.add(tag);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("order", order.name().toLowerCase());
+        result.put("tags", tags);
+        result.put("matching", top.getMatching());
+        result.put("top", ranked);
+        return result;
+    }
+
+    // From the shared cache if the repository allows it, otherwise fetched now.
+    private TagList getTags(GenericUrl url, PackageMaterialProperties repositoryConfiguration) throws IOException {
+        RegistryCredentials account = RegistryCredentials.of(repositoryConfiguration);
+        long cacheTtl = getTagCacheTtlMillis(repositoryConfiguration);
+        if (cacheTtl > 0) {
+            if (getNumber(repositoryConfiguration, Constants.DOCKER_CATALOG_PARALLELISM) > 0) {
+                // Scanned in the background, once per cache time; the poll doesn't wait for it.
+                prefetcher.trackCatalog(catalogUrl(repositoryConfiguration), account, cacheTtl,
+                        () -> scanCatalog(repositoryConfiguration));
+            }
+            long prefetchInterval = getPrefetchIntervalMillis(repositoryConfiguration);
+            if (prefetchInterval > 0) {
+                prefetcher.track(url.build(), account, getTagPageSize(repositoryConfiguration), prefetchInterval);
+            }
+            return getCachedTags(url, account, getTagPageSize(repositoryConfiguration), cacheTtl);
+        }
+        return fetchTagList(url, account, getTagPageSize(repositoryConfiguration));
+    }
+
+    private TagList fetchTagList(GenericUrl url, RegistryCredentials account, int pageSize) throws IOException {
+        List<String> tags = new ArrayList<>();
+        FetchedTags fetched = TagFetcher(url, account, pageSize, null, tags::add);
+        return new TagList(tags, fetched.getEtag(), tagListCache.now());
+    }
+
 }
\ No newline at end of file
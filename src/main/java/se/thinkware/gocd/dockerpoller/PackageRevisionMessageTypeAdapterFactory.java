@@ -0,0 +1,127 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PackageRevisionMessage without reflection. Dates go through whatever Date
+ * adapter the Gson instance is configured with, so the date format stays in
+ * JsonUtil. The data map is written when it has entries, so that GoCD hands
+ * it back to us in the next latest-revision-since request.
+ */
+class PackageRevisionMessageTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != PackageRevisionMessage.class) {
+            return null;
+        }
+        return (TypeAdapter<T>) new Adapter(gson.getAdapter(Date.class));
+    }
+
+    private static class Adapter extends TypeAdapter<PackageRevisionMessage> {
+
+        private final TypeAdapter<Date> dateAdapter;
+
+        Adapter(TypeAdapter<Date> dateAdapter) {
+            this.dateAdapter = dateAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, PackageRevisionMessage revision) throws IOException {
+            if (revision == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("revision").value(revision.getRevision());
+            if (revision.getTimestamp() != null) {
+                dateAdapter.write(out.name("timestamp"), revision.getTimestamp());
+            }
+            out.name("user").value(revision.getUser());
+            out.name("revisionComment").value(revision.getRevisionComment());
+            out.name("trackbackUrl").value(revision.getTrackbackUrl());
+            if (!revision.getData().isEmpty()) {
+                out.name("data").beginObject();
+                for (Map.Entry<String, String> entry : revision.getData().entrySet()) {
+                    out.name(entry.getKey()).value(entry.getValue());
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PackageRevisionMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String revision = null;
+            Date timestamp = null;
+            String user = null;
+            String revisionComment = null;
+            String trackbackUrl = null;
+            Map<String, String> data = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "revision":
+                        revision = in.nextString();
+                        break;
+                    case "timestamp":
+                        timestamp = dateAdapter.read(in);
+                        break;
+                    case "user":
+                        user = in.nextString();
+                        break;
+                    case "revisionComment":
+                        revisionComment = in.nextString();
+                        break;
+                    case "trackbackUrl":
+                        trackbackUrl = in.nextString();
+                        break;
+                    case "data":
+                        data = new HashMap<>();
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            String key = in.nextName();
+                            if (in.peek() == JsonToken.NULL) {
+                                in.nextNull();
+                            } else {
+                                data.put(key, in.nextString());
+                            }
+                        }
+                        in.endObject();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            PackageRevisionMessage result = new PackageRevisionMessage(revision, timestamp, user, revisionComment, trackbackUrl);
+            if (data != null) {
+                result.getData().putAll(data);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A thin layer over the GoCD plugin logger for the polling hot path. Messages are
+ * built lazily, and only if their level is enabled, so a poll doesn't pay for
+ * formatting lines nobody reads. The plugin API doesn't tell us the configured
+ * level, so we keep our own threshold, from the system property
+ * gocd.dockerpoller.log.level (DEBUG, INFO, WARN or ERROR, INFO by default).
+ */
+class PollLog {
+
+    static final String LEVEL_PROPERTY = "gocd.dockerpoller.log.level";
+    static final long WARNING_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static class Warning {
+        final long loggedAt;
+        final AtomicInteger suppressed = new AtomicInteger();
+
+        Warning(long loggedAt) {
+            this.loggedAt = loggedAt;
+        }
+    }
+
+    private final Logger logger;
+    private final Level threshold;
+    private final LongSupplier clock;
+    private final Map<String, Warning> warnings = new ConcurrentHashMap<>();
+    private volatile long sweptAt;
+
+    PollLog(Logger logger, Level threshold, LongSupplier clock) {
+        this.logger = logger;
+        this.threshold = threshold;
+        this.clock = clock;
+        this.sweptAt = clock.getAsLong();
+    }
+
+    static PollLog getLogFor(Class<?> loggingClass) {
+        return new PollLog(Logger.getLoggerFor(loggingClass), configuredLevel(), System::currentTimeMillis);
+    }
+
+    static Level configuredLevel() {
+        String level = System.getProperty(LEVEL_PROPERTY);
+        if (level != null) {
+            try {
+                return Level.valueOf(level.trim().toUpperCase());
+            } catch (IllegalArgumentException ignored) {
+                // Fall back to the default
+            }
+        }
+        return Level.INFO;
+    }
+
+    boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) {
+            logger.debug(message.get());
+        }
+    }
+
+    void info(Supplier<String> message) {
+        if (isEnabled(Level.INFO)) {
+            logger.info(message.get());
+        }
+    }
+
+    void info(String message) {
+        if (isEnabled(Level.INFO)) {
+            logger.info(message);
+        }
+    }
+
+    void warn(Supplier<String> message) {
+        if (isEnabled(Level.WARN)) {
+            logger.warn(message.get());
+        }
+    }
+
+    void warn(String message) {
+        if (isEnabled(Level.WARN)) {
+            logger.warn(message);
+        }
+    }
+
+    void error(String message) {
+        logger.error(message);
+    }
+
+    /**
+     * Logs a warning at most once per interval for the same key, typically an image,
+     * so that a registry which is down doesn't fill the log with one line per poll.
+     * The next warning that gets through says how many were held back. Keys, such
+     * as manifest URLs, come and go, so those not warned about for an interval are
+     * forgotten once per interval.
+     */
+    boolean warnLimited(String key, Supplier<String> message) {
+        if (!isEnabled(Level.WARN)) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        if (now - sweptAt >= WARNING_INTERVAL_MILLIS) {
+            sweptAt = now;
+            warnings.values().removeIf(warning -> now - warning.loggedAt >= WARNING_INTERVAL_MILLIS);
+        }
+        Warning previous = warnings.get(key);
+        if (previous != null && now - previous.loggedAt < WARNING_INTERVAL_MILLIS) {
+            previous.suppressed.incrementAndGet();
+            return false;
+        }
+        Warning current = new Warning(now);
+        boolean mine = previous == null
+                ? warnings.putIfAbsent(key, current) == null
+                : warnings.replace(key, previous, current);
+        if (!mine) {
+            // Someone else logged the same warning just now.
+            Warning other = warnings.get(key);
+            if (other != null) {
+                other.suppressed.incrementAndGet();
+            }
+            return false;
+        }
+        int suppressed = previous == null ? 0 : previous.suppressed.get();
+        logger.warn(suppressed == 0
+                ? message.get()
+                : String.format("%s (%d similar warnings suppressed)", message.get(), suppressed));
+        return true;
+    }
+
+    // Forget about earlier failures, so that the next one is logged right away.
+    void recovered(String key) {
+        warnings.remove(key);
+    }
+
+    int limitedWarnings() {
+        return warnings.size();
+    }
+
+    /**
+     * One line per poll, with what was found and how long it took.
+     */
+    void pollSummary(Object image, int tags, int matching, String latest, long startNanos) {
+        info(() -> String.format("Polled %s: %d tags, %d matching, latest %s, %d ms",
+                image, tags, matching, latest, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+    }
+}
@@ -0,0 +1,272 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.GenericUrl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms per registry and image, for each phase of a poll.
+ * They can be dumped as JSON through the plugin API, and written as a Prometheus
+ * text file to the path in the system property gocd.dockerpoller.metrics.file.
+ */
+class PollMetrics {
+
+    private static PollLog LOGGER = PollLog.getLogFor(PollMetrics.class);
+
+    static final String METRICS_FILE_PROPERTY = "gocd.dockerpoller.metrics.file";
+    static final long EXPORT_INTERVAL_MILLIS = 10000;
+
+    enum Phase {
+        ANONYMOUS_GET, TOKEN_FETCH, AUTHENTICATED_GET, JSON_PARSE, TAG_SELECTION;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    enum Counter {
+        POLLS, ERRORS, TAGS, MATCHING_TAGS, CACHE_HITS, CACHE_MISSES, NOT_MODIFIED, WEBHOOK_EVENTS, UNCHANGED_TAGS;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    // Upper bounds in milliseconds; the last bucket is +Inf.
+    static final long[] BUCKETS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        double getSumSeconds() {
+            return sumNanos.sum() / 1e9;
+        }
+
+        // Cumulative, as Prometheus wants them.
+        long[] getCumulativeBuckets() {
+            long[] cumulative = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < cumulative.length; i++) {
+                total += buckets.get(i);
+                cumulative[i] = total;
+            }
+            return cumulative;
+        }
+    }
+
+    private static class Key implements Comparable<Key> {
+        final String registry;
+        final String image;
+        final String name;
+
+        Key(String registry, String image, String name) {
+            this.registry = registry;
+            this.image = image;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return registry.equals(that.registry) && image.equals(that.image) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * registry.hashCode() + image.hashCode()) + name.hashCode();
+        }
+
+        @Override
+        public int compareTo(Key that) {
+            int result = registry.compareTo(that.registry);
+            if (result == 0) {
+                result = image.compareTo(that.image);
+            }
+            return result == 0 ? name.compareTo(that.name) : result;
+        }
+    }
+
+    private final Map<Key, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<Key, LongAdder> counters = new ConcurrentHashMap<>();
+    private final AtomicLong lastExport = new AtomicLong();
+
+    static String registryOf(GenericUrl url) {
+        return url.getHost() + (url.getPort() == -1 ? "" : ":" + url.getPort());
+    }
+
+    // The repository part of /v2/<image>/tags/list, /v2/<image>/manifests/<tag> and so on.
+    static String imageOf(GenericUrl url) {
+        String path = url.getRawPath() == null ? "" : url.getRawPath();
+        int start = path.indexOf("/v2/");
+        start = start < 0 ? 0 : start + 4;
+        for (String marker : new String[]{"/tags/", "/manifests/", "/blobs/"}) {
+            int end = path.indexOf(marker, start);
+            if (end >= 0) {
+                return path.substring(start, end);
+            }
+        }
+        return "";
+    }
+
+    void record(GenericUrl url, Phase phase, long startNanos) {
+        record(registryOf(url), imageOf(url), phase, System.nanoTime() - startNanos);
+    }
+
+    void record(String registry, String image, Phase phase, long nanos) {
+        histograms.computeIfAbsent(new Key(registry, image, phase.label()), key -> new Histogram()).record(nanos);
+    }
+
+    void count(GenericUrl url, Counter counter, long amount) {
+        count(registryOf(url), imageOf(url), counter, amount);
+    }
+
+    void count(String registry, String image, Counter counter, long amount) {
+        counters.computeIfAbsent(new Key(registry, image, counter.label()), key -> new LongAdder()).add(amount);
+    }
+
+    long get(String registry, String image, Counter counter) {
+        LongAdder adder = counters.get(new Key(registry, image, counter.label()));
+        return adder == null ? 0 : adder.sum();
+    }
+
+    Histogram get(String registry, String image, Phase phase) {
+        return histograms.get(new Key(registry, image, phase.label()));
+    }
+
+    /**
+     * Everything we have, as maps and lists that serialize to plain JSON.
+     */
+    Map<String, Object> toMap() {
+        List<Map<String, Object>> latencies = new ArrayList<>();
+        for (Map.Entry<Key, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Map<String, Object> latency = labels(entry.getKey(), "phase");
+            Histogram histogram = entry.getValue();
+            latency.put("count", histogram.getCount());
+            latency.put("sum_seconds", histogram.getSumSeconds());
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            long[] cumulative = histogram.getCumulativeBuckets();
+            for (int i = 0; i < cumulative.length; i++) {
+                buckets.put(i < BUCKETS.length ? String.valueOf(BUCKETS[i]) : "+Inf", cumulative[i]);
+            }
+            latency.put("buckets_ms", buckets);
+            latencies.add(latency);
+        }
+        List<Map<String, Object>> counts = new ArrayList<>();
+        for (Map.Entry<Key, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            Map<String, Object> count = labels(entry.getKey(), "counter");
+            count.put("value", entry.getValue().sum());
+            counts.add(count);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("latencies", latencies);
+        result.put("counters", counts);
+        return result;
+    }
+
+    private static Map<String, Object> labels(Key key, String nameLabel) {
+        Map<String, Object> labels = new LinkedHashMap<>();
+        labels.put("registry", key.registry);
+        labels.put("image", key.image);
+        labels.put(nameLabel, key.name);
+        return labels;
+    }
+
+    void writePrometheus(Writer out) throws IOException {
+        out.write("# HELP dockerpoller_request_duration_seconds Time spent in each phase of a poll.\n");
+        out.write("# TYPE dockerpoller_request_duration_seconds histogram\n");
+        for (Map.Entry<Key, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String labels = prometheusLabels(entry.getKey(), "phase");
+            long[] cumulative = entry.getValue().getCumulativeBuckets();
+            for (int i = 0; i < cumulative.length; i++) {
+                String le = i < BUCKETS.length ? String.valueOf(BUCKETS[i] / 1000.0) : "+Inf";
+                out.write("dockerpoller_request_duration_seconds_bucket{" + labels + ",le=\"" + le + "\"} " + cumulative[i] + "\n");
+            }
+            out.write("dockerpoller_request_duration_seconds_sum{" + labels + "} " + entry.getValue().getSumSeconds() + "\n");
+            out.write("dockerpoller_request_duration_seconds_count{" + labels + "} " + entry.getValue().getCount() + "\n");
+        }
+        for (Counter counter : Counter.values()) {
+            String name = "dockerpoller_" + counter.label() + "_total";
+            out.write("# TYPE " + name + " counter\n");
+            for (Map.Entry<Key, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+                if (entry.getKey().name.equals(counter.label())) {
+                    out.write(name + "{" + prometheusLabels(entry.getKey(), null) + "} " + entry.getValue().sum() + "\n");
+                }
+            }
+        }
+    }
+
+    private static String prometheusLabels(Key key, String nameLabel) {
+        String labels = "registry=\"" + escape(key.registry) + "\",image=\"" + escape(key.image) + "\"";
+        return nameLabel == null ? labels : labels + "," + nameLabel + "=\"" + key.name + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Writes the Prometheus text file if one is configured and the last write is
+     * old enough. The file is replaced atomically, so scrapers never see half of it.
+     */
+    void exportIfDue() {
+        String file = System.getProperty(METRICS_FILE_PROPERTY);
+        if (file == null || file.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastExport.get();
+        if (now - last < EXPORT_INTERVAL_MILLIS || !lastExport.compareAndSet(last, now)) {
+            return;
+        }
+        try {
+            export(Paths.get(file));
+        } catch (IOException ex) {
+            LOGGER.warnLimited(file, () -> String.format("Could not write metrics to %s: %s", file, ex.getMessage()));
+        }
+    }
+
+    void export(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try (Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writePrometheus(out);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,154 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs polls on a few threads of their own and hands out futures for them, or
+ * runs them on the calling thread with a deadline.
+ *
+ * The HTTP client blocks, so a running poll holds its thread, but callers don't
+ * have to wait: they can combine futures, give up on them or cancel them. A future
+ * not done by its deadline fails with a TimeoutException, and a future that fails
+ * that way or is cancelled interrupts its poll, which then stops before its next
+ * request or at its next wait for the registry's rate limit or for another thread.
+ * Deadlines count from when a poll starts running, not from when it was submitted.
+ */
+class PollRunner {
+
+    static final int THREADS = 8;
+
+    private final int threads;
+    private ThreadPoolExecutor workers;
+    private ScheduledThreadPoolExecutor timer;
+
+    // Whichever comes first, the poll finishing or its deadline passing, settles it.
+    private static class Deadline {
+        boolean done;
+        boolean expired;
+    }
+
+    PollRunner() {
+        this(THREADS);
+    }
+
+    PollRunner(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Starts a poll; a deadline of 0 means none.
+     */
+    <T> CompletableFuture<T> submit(Callable<T> poll, long deadlineMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledThreadPoolExecutor deadlines = timer();
+        Future<?> running = workers().submit(() -> {
+            // Cancelled while it was queued.
+            if (result.isDone()) {
+                return;
+            }
+            if (deadlineMillis > 0) {
+                ScheduledFuture<?> timeout = deadlines.schedule(() -> result.completeExceptionally(
+                        new TimeoutException(String.format("Poll not done in %d ms", deadlineMillis))),
+                        deadlineMillis, TimeUnit.MILLISECONDS);
+                result.whenComplete((value, e) -> timeout.cancel(false));
+            }
+            try {
+                result.complete(poll.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (e != null && !running.isDone()) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs a poll on the calling thread, so that the caller's threads, not ours,
+     * limit how many polls run at once. A deadline of 0 means none; a poll not done
+     * by its deadline is interrupted, and then fails with a TimeoutException. A poll
+     * that was done in time keeps its result, even if the deadline fires before the
+     * poll is seen to be done.
+     */
+    <T> T run(Supplier<T> poll, long deadlineMillis) throws TimeoutException {
+        if (deadlineMillis <= 0) {
+            return poll.get();
+        }
+        Thread caller = Thread.currentThread();
+        long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        Deadline deadline = new Deadline();
+        ScheduledFuture<?> timeout = timer().schedule(() -> {
+            synchronized (deadline) {
+                if (!deadline.done) {
+                    deadline.expired = true;
+                    caller.interrupt();
+                }
+            }
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+        T result;
+        long finished;
+        try {
+            result = poll.get();
+            finished = System.nanoTime();
+        } finally {
+            timeout.cancel(false);
+            synchronized (deadline) {
+                deadline.done = true;
+                if (deadline.expired) {
+                    // The interrupt was meant for the poll, not for whatever the caller does next.
+                    Thread.interrupted();
+                }
+            }
+        }
+        // The timer never fires early, so a poll done before it was due was never interrupted.
+        if (deadline.expired && finished - due >= 0) {
+            throw new TimeoutException(String.format("Poll not done in %d ms", deadlineMillis));
+        }
+        return result;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor timer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, runnable -> daemon(runnable, "docker-poller-deadlines"));
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    // Threads are only started once there is something to poll.
+    private synchronized ThreadPoolExecutor workers() {
+        if (workers == null) {
+            workers = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(), runnable -> daemon(runnable, "docker-poller"));
+            workers.allowCoreThreadTimeOut(true);
+        }
+        return workers;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    synchronized void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connection settings per registry: timeouts, applied to each request, the
+ * number of pooled keep-alive connections we may hold to it, and its throttle.
+ * Credentials are not kept here; each poll brings those of its repository.
+ */
+class RegistryConnections {
+
+    static final int DEFAULT_MAX_CONNECTIONS = 20;
+    static final int MAX_TOTAL_CONNECTIONS = 200;
+    static final int DEFAULT_TIMEOUT_SECONDS = 20;
+    static final String POOLED_PROPERTY = "gocd.dockerpoller.connections.pooled";
+
+    private final Map<String, Settings> settings = new ConcurrentHashMap<>();
+
+    private final Map<String, RegistryThrottle> throttles = new ConcurrentHashMap<>();
+
+    private final HttpTransport transport;
+
+    // Only set when the transport is our pooled one.
+    private final ConnPerRouteBean connectionsPerRoute;
+
+    RegistryConnections(HttpTransport transport) {
+        this(transport, null);
+    }
+
+    private RegistryConnections(HttpTransport transport, ConnPerRouteBean connectionsPerRoute) {
+        this.transport = transport;
+        this.connectionsPerRoute = connectionsPerRoute;
+    }
+
+    static class Settings {
+        final int connectTimeoutMillis;
+        final int readTimeoutMillis;
+        final int maxConnections;
+
+        Settings(int connectTimeoutMillis, int readTimeoutMillis, int maxConnections) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    private static final Settings DEFAULTS = new Settings(
+            DEFAULT_TIMEOUT_SECONDS * 1000, DEFAULT_TIMEOUT_SECONDS * 1000, DEFAULT_MAX_CONNECTIONS);
+
+    /**
+     * The JDK's transport, or the pooled one if the GoCD server is started
+     * with -Dgocd.dockerpoller.connections.pooled=true.
+     */
+    static RegistryConnections configured() {
+        if (Boolean.getBoolean(POOLED_PROPERTY)) {
+            return pooled();
+        }
+        return new RegistryConnections(new NetHttpTransport());
+    }
+
+    /**
+     * An Apache HttpClient transport with a thread safe connection pool, so that
+     * connections, and their TLS sessions, are kept alive and reused between polls.
+     */
+    static RegistryConnections pooled() {
+        ConnPerRouteBean connectionsPerRoute = new ConnPerRouteBean(DEFAULT_MAX_CONNECTIONS);
+        ApacheHttpTransport.Builder builder = new ApacheHttpTransport.Builder();
+        HttpParams params = builder.getHttpParams();
+        ConnManagerParams.setMaxConnectionsPerRoute(params, connectionsPerRoute);
+        ConnManagerParams.setMaxTotalConnections(params, MAX_TOTAL_CONNECTIONS);
+        // Registries drop idle connections between polls; check before reusing one.
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        return new RegistryConnections(builder.build(), connectionsPerRoute);
+    }
+
+    HttpTransport getTransport() {
+        return transport;
+    }
+
+    void configure(PackageMaterialProperties repositoryConfiguration) {
+        PackageMaterialProperty registryUrl = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL);
+        if (registryUrl == null || registryUrl.value() == null) {
+            return;
+        }
+        GenericUrl url = new GenericUrl(registryUrl.value());
+        Settings registrySettings = new Settings(
+                seconds(repositoryConfiguration, Constants.DOCKER_CONNECT_TIMEOUT, DEFAULTS.connectTimeoutMillis),
+                seconds(repositoryConfiguration, Constants.DOCKER_READ_TIMEOUT, DEFAULTS.readTimeoutMillis),
+                number(repositoryConfiguration, Constants.DOCKER_MAX_CONNECTIONS, DEFAULTS.maxConnections));
+        settings.put(keyOf(url), registrySettings);
+        throttleFor(url).setRequestsPerMinute(number(repositoryConfiguration, Constants.DOCKER_REQUESTS_PER_MINUTE, 0));
+        if (connectionsPerRoute != null) {
+            boolean secure = "https".equals(url.getScheme());
+            int port = url.getPort() != -1 ? url.getPort() : secure ? 443 : 80;
+            HttpHost host = new HttpHost(url.getHost(), port, url.getScheme());
+            connectionsPerRoute.setMaxForRoute(new HttpRoute(host, null, secure), registrySettings.maxConnections);
+        }
+    }
+
+    void apply(HttpRequest request) {
+        Settings registrySettings = settings.getOrDefault(keyOf(request.getUrl()), DEFAULTS);
+        request.setConnectTimeout(registrySettings.connectTimeoutMillis);
+        request.setReadTimeout(registrySettings.readTimeoutMillis);
+    }
+
+    // Token servers are throttled too, by their own host.
+    RegistryThrottle throttleFor(GenericUrl url) {
+        return throttles.computeIfAbsent(keyOf(url), RegistryThrottle::new);
+    }
+
+    static String keyOf(GenericUrl url) {
+        return url.getScheme() + "://" + url.getHost() + ":" + url.getPort();
+    }
+
+    private static int seconds(PackageMaterialProperties configuration, String key, int defaultMillis) {
+        int seconds = number(configuration, key, 0);
+        return seconds > 0 ? seconds * 1000 : defaultMillis;
+    }
+
+    private static int number(PackageMaterialProperties configuration, String key, int defaultValue) {
+        PackageMaterialProperty property = configuration.getProperty(key);
+        if (property == null || property.value() == null || property.value().trim().isEmpty()) {
+            return defaultValue;
+        }
+        int value = Integer.parseInt(property.value().trim());
+        return value > 0 ? value : defaultValue;
+    }
+}
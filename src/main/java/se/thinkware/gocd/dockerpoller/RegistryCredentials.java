@@ -0,0 +1,119 @@
+package se.thinkware.gocd.dockerpoller;
+
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * The account a repository logs in to its registry with. The password (or an access
+ * token used as one) goes to the token service, or to the registry itself if it
+ * asks for Basic auth. A token without a username goes with the username "token",
+ * which registries that take access tokens accept; if the token service refuses
+ * it, it's sent to the registry as a bearer token as it is.
+ */
+class RegistryCredentials {
+
+    static final String TOKEN_USERNAME = "token";
+
+    private final String username;
+    private final String password;
+
+    RegistryCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * The credentials of a repository, or null if it has none.
+     */
+    static RegistryCredentials of(PackageMaterialProperties repositoryConfiguration) {
+        String username = valueOf(repositoryConfiguration, Constants.DOCKER_USERNAME);
+        String password = valueOf(repositoryConfiguration, Constants.DOCKER_PASSWORD);
+        if (password == null) {
+            return null;
+        }
+        return new RegistryCredentials(username, password);
+    }
+
+    private static String valueOf(PackageMaterialProperties configuration, String key) {
+        PackageMaterialProperty property = configuration.getProperty(key);
+        if (property == null || property.value() == null || property.value().trim().isEmpty()) {
+            return null;
+        }
+        return property.value().trim();
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    boolean isTokenOnly() {
+        return username == null;
+    }
+
+    /**
+     * Tells accounts apart without showing passwords: the username, and a hash of
+     * the password, so that a changed password doesn't reuse the old one's tokens.
+     */
+    String accountKey() {
+        String hash;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+            hash = Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256", e);
+        }
+        return username == null ? "token " + hash : "user " + username + " " + hash;
+    }
+
+    /**
+     * What is kept of a URL for an account, such as its tag list, so that what one
+     * account may see is never served to another.
+     */
+    static String keyOf(String url, RegistryCredentials account) {
+        return account == null ? url : url + " " + account.accountKey();
+    }
+
+    // URLs have no spaces of their own.
+    static String urlOf(String key) {
+        int space = key.indexOf(' ');
+        return space < 0 ? key : key.substring(0, space);
+    }
+
+    String basicAuthorization() {
+        String pair = (username == null ? TOKEN_USERNAME : username) + ":" + password;
+        return "Basic " + Base64.getEncoder().encodeToString(pair.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String bearerAuthorization() {
+        return "Bearer " + password;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RegistryCredentials that = (RegistryCredentials) o;
+
+        return (username != null ? username.equals(that.username) : that.username == null) &&
+                password.equals(that.password);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = username != null ? username.hashCode() : 0;
+        result = 31 * result + password.hashCode();
+        return result;
+    }
+
+    // Never shows the password.
+    @Override
+    public String toString() {
+        return isTokenOnly() ? "access token" : "user " + username;
+    }
+}
@@ -0,0 +1,189 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps us from hammering one registry. A token bucket limits the request rate, if
+ * a repository sets one; with several, the strictest one set in the last hour. After
+ * 429 Too Many Requests, or a few 5xx answers in a row, we back off, for as long as
+ * Retry-After says or exponentially longer for each failure in a row. Requests while
+ * backing off fail at once, without reaching the registry.
+ */
+class RegistryThrottle {
+
+    static final long MIN_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // Waiting longer than this for the rate limit would hold up GoCD's poll thread too long.
+    static final long MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    // One broken manifest or blob shouldn't cut off the whole registry; only repeated server errors do.
+    static final int SERVER_ERRORS_BEFORE_BACKOFF = 3;
+    // A rate limit no repository has set for this long no longer applies.
+    static final long LIMIT_MEMORY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Thrown instead of sending a request we are not allowed to send yet.
+     */
+    static class BackoffException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        BackoffException(String message) {
+            super(message);
+        }
+    }
+
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final String registry;
+    private final LongSupplier clock;
+    private final Sleeper sleeper;
+
+    // Limits set by repositories, in requests per minute, and when they were last set.
+    private final Map<Integer, Long> limits = new HashMap<>();
+    private double requestsPerMilli = 0;
+    private double capacity = 0;
+    private double tokens = 0;
+    private long refilledAt;
+
+    private int failures = 0;
+    private long backoffUntil = 0;
+
+    RegistryThrottle(String registry) {
+        this(registry, System::currentTimeMillis, Thread::sleep);
+    }
+
+    RegistryThrottle(String registry, LongSupplier clock, Sleeper sleeper) {
+        this.registry = registry;
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.refilledAt = clock.getAsLong();
+    }
+
+    /**
+     * Requests per minute a repository allows, 0 for no limit. Bursts of up to ten
+     * seconds' worth are allowed. Repositories of the same registry that set different
+     * limits get the strictest one, and the bucket keeps its tokens when that changes.
+     */
+    synchronized void setRequestsPerMinute(int requestsPerMinute) {
+        long now = clock.getAsLong();
+        if (requestsPerMinute > 0) {
+            limits.put(requestsPerMinute, now);
+        }
+        limits.values().removeIf(setAt -> now - setAt > LIMIT_MEMORY_MILLIS);
+        int strictest = limits.keySet().stream().min(Integer::compare).orElse(0);
+        double perMilli = strictest / 60000.0;
+        if (perMilli == requestsPerMilli) {
+            return;
+        }
+        boolean wasLimited = requestsPerMilli > 0;
+        if (wasLimited) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * requestsPerMilli);
+        }
+        requestsPerMilli = perMilli;
+        capacity = Math.max(1, strictest / 6.0);
+        tokens = wasLimited ? Math.min(tokens, capacity) : capacity;
+        refilledAt = now;
+    }
+
+    void acquire() throws IOException {
+        long wait;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (now < backoffUntil) {
+                throw new BackoffException(String.format("Backing off from %s for another %d s",
+                        registry, TimeUnit.MILLISECONDS.toSeconds(backoffUntil - now + 999)));
+            }
+            if (requestsPerMilli == 0) {
+                return;
+            }
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * requestsPerMilli);
+            refilledAt = now;
+            // Take the token now, even if it's not there yet, so that waiters queue up in order.
+            tokens -= 1;
+            wait = tokens < 0 ? (long) Math.ceil(-tokens / requestsPerMilli) : 0;
+            if (wait > MAX_WAIT_MILLIS) {
+                tokens += 1;
+                throw new BackoffException(String.format("Request rate limit for %s reached", registry));
+            }
+        }
+        if (wait > 0) {
+            try {
+                sleeper.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BackoffException("Interrupted while waiting for the rate limit of " + registry);
+            }
+        }
+    }
+
+    /**
+     * Called with the status of each response, and its Retry-After header if any.
+     */
+    synchronized void record(int statusCode, String retryAfter) {
+        if (!isThrottling(statusCode)) {
+            failures = 0;
+            return;
+        }
+        failures++;
+        long now = clock.getAsLong();
+        long delay = retryAfterMillis(retryAfter, now);
+        if (delay < 0) {
+            if (statusCode == 429) {
+                delay = backoffMillis(failures);
+            } else if (failures >= SERVER_ERRORS_BEFORE_BACKOFF) {
+                delay = backoffMillis(failures - SERVER_ERRORS_BEFORE_BACKOFF + 1);
+            } else {
+                return;
+            }
+        }
+        backoffUntil = Math.max(backoffUntil, now + delay);
+    }
+
+    // Exponentially longer for each failure in a row.
+    static long backoffMillis(int failures) {
+        return Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures - 1, 20));
+    }
+
+    synchronized long getBackoffUntil() {
+        return backoffUntil;
+    }
+
+    static boolean isThrottling(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    // Whether a poll failed because the registry asked us to back off, rather than e.g. a missing image.
+    static boolean isThrottling(IOException e) {
+        return e instanceof BackoffException
+                || e instanceof HttpResponseException && isThrottling(((HttpResponseException) e).getStatusCode());
+    }
+
+    // Retry-After is either seconds or an HTTP date. Returns -1 if missing or unreadable.
+    static long retryAfterMillis(String retryAfter, long now) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        long millis;
+        try {
+            millis = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                millis = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - now;
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+        return Math.max(0, Math.min(MAX_RETRY_AFTER_MILLIS, millis));
+    }
+}
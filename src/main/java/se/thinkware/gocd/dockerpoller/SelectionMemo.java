@@ -0,0 +1,51 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The selections made from each image's tag list, with the fingerprint of the
+ * list they were made from. Most polls find the same list as last time, and can
+ * then skip filtering and comparing its tags altogether.
+ */
+class SelectionMemo {
+
+    private static class Selections {
+        final TagFingerprint fingerprint;
+        final Map<String, LatestTagSelector> byKey = new ConcurrentHashMap<>();
+
+        Selections(TagFingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final Map<String, Selections> images = new ConcurrentHashMap<>();
+
+    /**
+     * What was selected from the same list before, or null.
+     */
+    LatestTagSelector get(String image, TagFingerprint fingerprint, String key) {
+        Selections selections = images.get(image);
+        if (selections == null || !selections.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        return selections.byKey.get(key);
+    }
+
+    /**
+     * Keeps a selection that is done; a list with another fingerprint replaces
+     * everything selected from the one before.
+     */
+    void put(String image, TagFingerprint fingerprint, String key, LatestTagSelector selector) {
+        Selections selections = images.compute(image, (url, existing) ->
+                existing != null && existing.fingerprint.equals(fingerprint) ? existing : new Selections(fingerprint));
+        selections.byKey.put(key, selector);
+    }
+
+    /**
+     * The key of a selection: the filter, the order, and how many candidates were kept.
+     */
+    static String keyOf(String filter, TagOrder order, int candidates) {
+        return candidates + " " + order + " " + (filter == null ? "" : filter);
+    }
+}
@@ -0,0 +1,131 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tag pushed to or deleted from a registry, as told by a webhook.
+ *
+ * We understand Docker Registry v2 notifications, which GitLab's registry also
+ * sends, e.g. {"events": [{"action": "push", "target": {"repository": "lib/a",
+ * "tag": "1.2", "digest": "sha256:..."}, "request": {"host": "registry:5000"}}]},
+ * and Harbor webhooks, e.g. {"type": "PUSH_ARTIFACT", "event_data": {"resources":
+ * [{"tag": "1.2", "digest": "sha256:...", "resource_url": "harbor/lib/a:1.2"}],
+ * "repository": {"repo_full_name": "lib/a"}}}.
+ */
+class TagEvent {
+
+    private final String host;
+    private final String repository;
+    private final String tag;
+    private final String digest;
+    private final boolean deleted;
+
+    TagEvent(String host, String repository, String tag, String digest, boolean deleted) {
+        this.host = host;
+        this.repository = repository;
+        this.tag = tag;
+        this.digest = digest;
+        this.deleted = deleted;
+    }
+
+    // Events without a tag, e.g. blob pushes or pulls, are left out; a tag without a repository is an error.
+    static List<TagEvent> parse(String json) {
+        List<TagEvent> events = new ArrayList<>();
+        JsonElement root;
+        try {
+            root = new JsonParser().parse(json);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Not JSON: " + e.getMessage(), e);
+        }
+        if (!root.isJsonObject()) {
+            throw new IllegalArgumentException("Not a JSON object");
+        }
+        JsonObject body = root.getAsJsonObject();
+        if (body.has("events")) {
+            for (JsonElement element : array(body, "events")) {
+                JsonObject event = element.getAsJsonObject();
+                String action = string(event, "action");
+                JsonObject target = object(event, "target");
+                String tag = string(target, "tag");
+                if (tag == null || !("push".equals(action) || "delete".equals(action))) {
+                    continue;
+                }
+                events.add(new TagEvent(string(object(event, "request"), "host"), repositoryOf(string(target, "repository")),
+                        tag, string(target, "digest"), "delete".equals(action)));
+            }
+        } else if (body.has("event_data")) {
+            String type = string(body, "type");
+            boolean pushed = "PUSH_ARTIFACT".equals(type) || "pushImage".equals(type);
+            boolean deleted = "DELETE_ARTIFACT".equals(type) || "deleteImage".equals(type);
+            JsonObject data = object(body, "event_data");
+            String repository = string(object(data, "repository"), "repo_full_name");
+            for (JsonElement element : array(data, "resources")) {
+                JsonObject resource = element.getAsJsonObject();
+                String tag = string(resource, "tag");
+                if (tag == null || !(pushed || deleted)) {
+                    continue;
+                }
+                String resourceUrl = string(resource, "resource_url");
+                String host = resourceUrl == null || !resourceUrl.contains("/") ? null : resourceUrl.substring(0, resourceUrl.indexOf('/'));
+                events.add(new TagEvent(host, repositoryOf(repository), tag, string(resource, "digest"), deleted));
+            }
+        } else {
+            throw new IllegalArgumentException("Neither a registry notification nor a Harbor webhook");
+        }
+        return events;
+    }
+
+    private static String repositoryOf(String repository) {
+        if (repository == null || repository.isEmpty()) {
+            throw new IllegalArgumentException("Tag event without a repository");
+        }
+        return repository;
+    }
+
+    private static JsonObject object(JsonObject parent, String name) {
+        JsonElement element = parent == null ? null : parent.get(name);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    private static JsonArray array(JsonObject parent, String name) {
+        JsonElement element = parent == null ? null : parent.get(name);
+        return element != null && element.isJsonArray() ? element.getAsJsonArray() : new JsonArray();
+    }
+
+    private static String string(JsonObject parent, String name) {
+        JsonElement element = parent == null ? null : parent.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    String getRepository() {
+        return repository;
+    }
+
+    String getTag() {
+        return tag;
+    }
+
+    String getDigest() {
+        return digest;
+    }
+
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    @Override
+    public String toString() {
+        return (deleted ? "deleted " : "pushed ") + repository + ":" + tag;
+    }
+}
@@ -0,0 +1,186 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled docker tag filter. Like Pattern.asPredicate(), a tag matches if the
+ * regular expression is found anywhere in it. Filters that are only a literal,
+ * possibly anchored with ^ and $, or an alternation of literals, are matched with
+ * plain string operations instead of a regex.
+ *
+ * Compiled filters are cached by filter string, so polls don't recompile them.
+ */
+abstract class TagFilter implements Predicate<String> {
+
+    static final int MAX_CACHED_FILTERS = 500;
+
+    private static final Map<String, TagFilter> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, TagFilter>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TagFilter> eldest) {
+                    return size() > MAX_CACHED_FILTERS;
+                }
+            });
+
+    private static final String META_CHARACTERS = "\\.[]{}()*+?^$|";
+
+    private final String filter;
+
+    private TagFilter(String filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * The filter for a regular expression, where the empty string means all tags.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the filter isn't a valid regular expression
+     */
+    static TagFilter compile(String filter) {
+        TagFilter compiled = CACHE.get(filter);
+        if (compiled == null) {
+            compiled = create(filter);
+            CACHE.put(filter, compiled);
+        }
+        return compiled;
+    }
+
+    String getFilter() {
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return filter;
+    }
+
+    private static TagFilter create(String filter) {
+        String expression = filter.isEmpty() ? ".*" : filter;
+        // Always compile, so invalid filters fail the same way whichever matcher we pick.
+        Pattern pattern = Pattern.compile(expression);
+
+        if (expression.equals(".*")) {
+            return new TagFilter(filter) {
+                @Override
+                public boolean test(String tag) {
+                    return true;
+                }
+            };
+        }
+
+        List<String> alternatives = literalAlternatives(expression);
+        if (alternatives != null && alternatives.size() > 1) {
+            String[] literals = alternatives.toArray(new String[alternatives.size()]);
+            return new TagFilter(filter) {
+                @Override
+                public boolean test(String tag) {
+                    for (String literal : literals) {
+                        if (tag.contains(literal)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            };
+        }
+
+        boolean anchoredStart = expression.startsWith("^");
+        boolean anchoredEnd = expression.endsWith("$") && !expression.endsWith("\\$");
+        String body = expression.substring(
+                anchoredStart ? 1 : 0,
+                Math.max(anchoredStart ? 1 : 0, expression.length() - (anchoredEnd ? 1 : 0)));
+        String literal = literal(body);
+        if (literal == null) {
+            return new TagFilter(filter) {
+                @Override
+                public boolean test(String tag) {
+                    return pattern.matcher(tag).find();
+                }
+            };
+        }
+        if (anchoredStart && anchoredEnd) {
+            return new TagFilter(filter) {
+                @Override
+                public boolean test(String tag) {
+                    return tag.equals(literal);
+                }
+            };
+        }
+        if (anchoredStart) {
+            return new TagFilter(filter) {
+                @Override
+                public boolean test(String tag) {
+                    return tag.startsWith(literal);
+                }
+            };
+        }
+        if (anchoredEnd) {
+            return new TagFilter(filter) {
+                @Override
+                public boolean test(String tag) {
+                    return tag.endsWith(literal);
+                }
+            };
+        }
+        return new TagFilter(filter) {
+            @Override
+            public boolean test(String tag) {
+                return tag.contains(literal);
+            }
+        };
+    }
+
+    /**
+     * The literal string a regular expression matches, or null if it's not a literal.
+     * Meta characters escaped with a backslash count as literal characters.
+     */
+    static String literal(String expression) {
+        StringBuilder literal = new StringBuilder(expression.length());
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < expression.length() && META_CHARACTERS.indexOf(expression.charAt(i + 1)) >= 0) {
+                    literal.append(expression.charAt(++i));
+                } else {
+                    // \d, \w and friends
+                    return null;
+                }
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    // "a|b|c" with only literals, or null.
+    private static List<String> literalAlternatives(String expression) {
+        List<String> alternatives = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= expression.length(); i++) {
+            if (i == expression.length() || (expression.charAt(i) == '|' && !escaped(expression, i))) {
+                String literal = literal(expression.substring(start, i));
+                if (literal == null || literal.isEmpty()) {
+                    return null;
+                }
+                alternatives.add(literal);
+                start = i + 1;
+            }
+        }
+        return alternatives;
+    }
+
+    private static boolean escaped(String expression, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && expression.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1;
+    }
+}
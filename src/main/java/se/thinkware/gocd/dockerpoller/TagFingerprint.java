@@ -0,0 +1,58 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.function.Consumer;
+
+/**
+ * A 64-bit FNV-1a hash and count of a tag list, built as the tags stream past.
+ * Two lists with the same fingerprint are taken to be the same list, so whatever
+ * was selected from one holds for the other.
+ */
+class TagFingerprint implements Consumer<String> {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET_BASIS;
+    private int count = 0;
+
+    @Override
+    public void accept(String tag) {
+        long h = hash;
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            h = (h ^ (c & 0xff)) * PRIME;
+            h = (h ^ (c >>> 8)) * PRIME;
+        }
+        // Tags can't contain a newline, so it keeps ["ab"] and ["a", "b"] apart.
+        hash = (h ^ '\n') * PRIME;
+        count++;
+    }
+
+    long getHash() {
+        return hash;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TagFingerprint that = (TagFingerprint) o;
+
+        return hash == that.hash && count == that.count;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(hash) + count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d tags, %016x", count, hash);
+    }
+}
@@ -0,0 +1,347 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The known tags of one image, and the latest tag found for each filter, kept in
+ * an append-only log on disk so that it survives restarts.
+ *
+ * Every tag gets a sequence number when it is first seen, and each winner
+ * remembers the sequence number it was selected at and how many tags matched
+ * its filter then. Removing tags takes a sequence number too. A filter with no
+ * tags removed since its winner only needs to look at the winner and at tags
+ * added since, and adds those that match to the count it had.
+ *
+ * Log lines are "+ seq tag", "- seq tag", and "= seq tag digest matching filter",
+ * with "-" for an unknown digest. After compaction, "# seq removed" holds the last
+ * sequence number and that of the last removal. When the log has grown to several
+ * times the live entries, it is rewritten from memory.
+ *
+ * The file is read and written with streams rather than channels. Polls are
+ * interrupted at their deadlines, and an interrupt closes a channel, even
+ * halfway through a write.
+ */
+class TagIndex {
+
+    private static PollLog LOGGER = PollLog.getLogFor(TagIndex.class);
+
+    static final int MIN_COMPACTION_LINES = 1000;
+
+    static class Winner {
+        final long sequence;
+        final String tag;
+        final String digest;
+        final int matching;
+
+        Winner(long sequence, String tag, String digest, int matching) {
+            this.sequence = sequence;
+            this.tag = tag;
+            this.digest = digest;
+            this.matching = matching;
+        }
+
+        String getTag() {
+            return tag;
+        }
+
+        String getDigest() {
+            return digest;
+        }
+
+        int getMatching() {
+            return matching;
+        }
+    }
+
+    // When a tag was added, and the last commit it was in.
+    private static class Seen {
+        final long sequence;
+        long commit;
+
+        Seen(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Seen> tags = new HashMap<>();
+    private final Map<String, Winner> winners = new HashMap<>();
+    private long sequence = 0;
+    private long removedAt = 0;
+    private long commits = 0;
+    private int logLines = 0;
+
+    TagIndex(Path file) {
+        this.file = file;
+    }
+
+    // An index we can't read is started over; it only costs one full selection.
+    static TagIndex load(Path file) {
+        TagIndex index = new TagIndex(file);
+        if (!Files.exists(file)) {
+            // A new image
+            return index;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file.toFile()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                index.apply(line);
+                index.logLines++;
+            }
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Could not read tag index %s: %s", file, e.getMessage()));
+            return new TagIndex(file);
+        }
+        return index;
+    }
+
+    // A line we can't make sense of, e.g. the last one after a crash, is skipped.
+    private void apply(String line) {
+        String[] fields = line.split(" ", 6);
+        try {
+            switch (fields[0]) {
+                case "+":
+                    long added = Long.parseLong(fields[1]);
+                    tags.put(fields[2], new Seen(added));
+                    sequence = Math.max(sequence, added);
+                    break;
+                case "-":
+                    long removed = Long.parseLong(fields[1]);
+                    tags.remove(fields[2]);
+                    sequence = Math.max(sequence, removed);
+                    removedAt = Math.max(removedAt, removed);
+                    break;
+                case "=":
+                    String digest = "-".equals(fields[3]) ? null : fields[3];
+                    Winner winner = new Winner(Long.parseLong(fields[1]), fields[2], digest, Integer.parseInt(fields[4]));
+                    winners.put(fields.length > 5 ? fields[5] : "", winner);
+                    sequence = Math.max(sequence, winner.sequence);
+                    break;
+                case "#":
+                    sequence = Math.max(sequence, Long.parseLong(fields[1]));
+                    removedAt = Math.max(removedAt, Long.parseLong(fields[2]));
+                    break;
+                default:
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignored) {
+            // Skip it
+        }
+    }
+
+    /**
+     * Collects the current tags of the image; commit() brings the index up to date.
+     */
+    class Update implements Consumer<String> {
+
+        private List<String> current = new ArrayList<>();
+        private boolean borrowed = false;
+        private long committedAt = -1;
+
+        @Override
+        public void accept(String tag) {
+            if (borrowed) {
+                current = new ArrayList<>(current);
+                borrowed = false;
+            }
+            current.add(tag);
+        }
+
+        /**
+         * Takes a list that is held anyway, such as a cached one, instead of copying it.
+         */
+        void acceptAll(List<String> tags) {
+            if (current.isEmpty()) {
+                current = tags;
+                borrowed = true;
+            } else {
+                tags.forEach(this);
+            }
+        }
+
+        int size() {
+            return current.size();
+        }
+
+        void commit() {
+            committedAt = TagIndex.this.commit(current);
+        }
+
+        /**
+         * Feeds the selector the tags it needs to find the latest tag for the filter:
+         * the previous winner and the tags added after it, or everything if tags were
+         * removed since. The selector then counts the tags that matched before too.
+         * A selector that keeps runners-up gets everything, since only the winner
+         * is stored. Returns the number of tags fed.
+         */
+        int select(String filter, LatestTagSelector selector) {
+            Winner winner;
+            List<String> added = new ArrayList<>();
+            synchronized (TagIndex.this) {
+                winner = winners.get(filter);
+                if (winner == null || selector.keepsRunnersUp() || removedAt > winner.sequence || !tags.containsKey(winner.tag)) {
+                    winner = null;
+                } else {
+                    for (String tag : current) {
+                        Seen seen = tags.get(tag);
+                        if (seen == null || seen.sequence > winner.sequence) {
+                            added.add(tag);
+                        }
+                    }
+                }
+            }
+            if (winner == null) {
+                current.forEach(selector);
+                return current.size();
+            }
+            selector.accept(winner.tag);
+            added.forEach(selector);
+            // The winner was counted again just now.
+            selector.countKnownMatches(winner.matching - 1);
+            return added.size() + 1;
+        }
+
+        void setWinner(String filter, String tag, String digest, int matching) {
+            if (committedAt < 0) {
+                throw new IllegalStateException("Winner set before the tags were committed");
+            }
+            TagIndex.this.setWinner(filter, tag, digest, matching, committedAt);
+        }
+    }
+
+    Update update() {
+        return new Update();
+    }
+
+    // One pass over the tags; the index is only walked for removals if some tags weren't there.
+    private synchronized long commit(List<String> current) {
+        long commit = ++commits;
+        List<String> lines = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        int present = 0;
+        for (String tag : current) {
+            Seen seen = tags.get(tag);
+            if (seen == null) {
+                added.add(tag);
+            } else if (seen.commit != commit) {
+                seen.commit = commit;
+                present++;
+            }
+        }
+        if (present < tags.size()) {
+            removedAt = ++sequence;
+            Iterator<Map.Entry<String, Seen>> known = tags.entrySet().iterator();
+            while (known.hasNext()) {
+                Map.Entry<String, Seen> tag = known.next();
+                if (tag.getValue().commit != commit) {
+                    known.remove();
+                    lines.add("- " + removedAt + " " + tag.getKey());
+                }
+            }
+        }
+        for (String tag : added) {
+            if (!tags.containsKey(tag)) {
+                Seen seen = new Seen(++sequence);
+                seen.commit = commit;
+                tags.put(tag, seen);
+                lines.add("+ " + sequence + " " + tag);
+            }
+        }
+        append(lines);
+        return sequence;
+    }
+
+    private synchronized void setWinner(String filter, String tag, String digest, int matching, long at) {
+        Winner previous = winners.get(filter);
+        if (previous != null && previous.tag.equals(tag) && previous.sequence == at && previous.matching == matching
+                && (digest == null || digest.equals(previous.digest))) {
+            return;
+        }
+        if (digest == null && previous != null && previous.tag.equals(tag)) {
+            digest = previous.digest;
+        }
+        Winner winner = new Winner(at, tag, digest, matching);
+        winners.put(filter, winner);
+        List<String> lines = new ArrayList<>();
+        lines.add(winnerLine(filter, winner));
+        append(lines);
+    }
+
+    synchronized Winner getWinner(String filter) {
+        return winners.get(filter);
+    }
+
+    synchronized int size() {
+        return tags.size();
+    }
+
+    private static String winnerLine(String filter, Winner winner) {
+        return "= " + winner.sequence + " " + winner.tag + " " + (winner.digest == null ? "-" : winner.digest)
+                + " " + winner.matching + " " + filter;
+    }
+
+    // The index in memory is still right if the disk fails us; we just start colder next time.
+    private void append(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        logLines += lines.size();
+        try {
+            if (logLines > Math.max(MIN_COMPACTION_LINES, 2 * (tags.size() + winners.size()))) {
+                compact();
+                return;
+            }
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (Writer out = writer(file, true)) {
+                for (String line : lines) {
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warnLimited(file.toString(), () -> String.format("Could not write tag index %s: %s", file, e.getMessage()));
+        }
+    }
+
+    // Rewrites the log with only the live entries, and swaps it in atomically.
+    synchronized void compact() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        List<Map.Entry<String, Seen>> live = new ArrayList<>(tags.entrySet());
+        live.sort(Comparator.comparingLong(tag -> tag.getValue().sequence));
+        try (Writer out = writer(temporary, false)) {
+            out.write("# " + sequence + " " + removedAt + "\n");
+            for (Map.Entry<String, Seen> tag : live) {
+                out.write("+ " + tag.getValue().sequence + " " + tag.getKey() + "\n");
+            }
+            for (Map.Entry<String, Winner> winner : winners.entrySet()) {
+                out.write(winnerLine(winner.getKey(), winner.getValue()) + "\n");
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logLines = 1 + live.size() + winners.size();
+    }
+
+    private static Writer writer(Path path, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path.toFile(), append), StandardCharsets.UTF_8));
+    }
+}
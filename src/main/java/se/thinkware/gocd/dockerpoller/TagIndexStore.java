@@ -0,0 +1,45 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tag indexes of all images, one file each in a directory given by the system
+ * property gocd.dockerpoller.index.dir. An index is read the first time its image
+ * is polled, so startup doesn't depend on how many materials there are.
+ */
+class TagIndexStore {
+
+    static final String INDEX_DIR_PROPERTY = "gocd.dockerpoller.index.dir";
+
+    private final Path directory;
+    private final Map<String, TagIndex> indexes = new ConcurrentHashMap<>();
+
+    TagIndexStore(Path directory) {
+        this.directory = directory;
+    }
+
+    // Null unless an index directory is configured.
+    static TagIndexStore configured() {
+        String directory = System.getProperty(INDEX_DIR_PROPERTY);
+        if (directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        return new TagIndexStore(Paths.get(directory.trim()));
+    }
+
+    TagIndex get(String key) {
+        return indexes.computeIfAbsent(key, k -> TagIndex.load(directory.resolve(fileName(k))));
+    }
+
+    // Readable, but with a hash, since different URLs may look the same once cleaned up.
+    static String fileName(String key) {
+        String readable = key.replaceFirst("^[a-z]+://", "").replaceAll("[^A-Za-z0-9._-]+", "_");
+        if (readable.length() > 100) {
+            readable = readable.substring(0, 100);
+        }
+        return readable + "-" + String.format("%08x", key.hashCode()) + ".log";
+    }
+}
@@ -0,0 +1,81 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An immutable snapshot of the tags of one image, as fetched at a certain time.
+ */
+class TagList {
+
+    private final String[] tags;
+    private final String etag;
+    private final long fetchedAt;
+    private volatile TagFingerprint fingerprint;
+
+    TagList(Collection<String> tags, String etag, long fetchedAt) {
+        this.tags = tags.toArray(new String[tags.size()]);
+        this.etag = etag;
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * A copy with a tag added, e.g. when a webhook tells us about a push. It keeps
+     * the time of the fetch, so the list is still fetched again when it expires,
+     * but not the ETag, which no longer describes it.
+     */
+    TagList with(String tag) {
+        List<String> changed = new ArrayList<>(Arrays.asList(tags));
+        if (!changed.contains(tag)) {
+            changed.add(tag);
+        }
+        return new TagList(changed, null, fetchedAt);
+    }
+
+    TagList without(String tag) {
+        List<String> changed = new ArrayList<>(Arrays.asList(tags));
+        changed.remove(tag);
+        return new TagList(changed, null, fetchedAt);
+    }
+
+    List<String> asList() {
+        return Collections.unmodifiableList(Arrays.asList(tags));
+    }
+
+    boolean contains(String tag) {
+        return Arrays.asList(tags).contains(tag);
+    }
+
+    void forEach(Consumer<String> consumer) {
+        for (String tag : tags) {
+            consumer.accept(tag);
+        }
+    }
+
+    // Computed once, when first asked for.
+    TagFingerprint fingerprint() {
+        TagFingerprint computed = fingerprint;
+        if (computed == null) {
+            computed = new TagFingerprint();
+            forEach(computed);
+            fingerprint = computed;
+        }
+        return computed;
+    }
+
+    int size() {
+        return tags.length;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    long getFetchedAt() {
+        return fetchedAt;
+    }
+}
@@ -0,0 +1,155 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tag lists shared between all materials polling the same image, whatever their
+ * tag filters are. Entries live for a caller-given TTL, the least recently used
+ * ones are evicted beyond a maximum size, and concurrent callers missing the same
+ * key wait for a single fetch instead of starting their own.
+ */
+class TagListCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    interface Loader {
+        TagList load() throws IOException;
+    }
+
+    private final int maxEntries;
+    private final Map<String, TagList> entries;
+    private final Map<String, CompletableFuture<TagList>> inFlight = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    TagListCache() {
+        this(DEFAULT_MAX_ENTRIES, System::currentTimeMillis);
+    }
+
+    TagListCache(int maxEntries, LongSupplier clock) {
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, TagList>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TagList> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    long now() {
+        return clock.getAsLong();
+    }
+
+    TagList get(String key, long ttlMillis, Loader loader) throws IOException {
+        TagList cached = getIfFresh(key, ttlMillis);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<TagList> mine = new CompletableFuture<>();
+        CompletableFuture<TagList> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // Someone may have finished a fetch between our lookup and putIfAbsent.
+            TagList tags = getIfFresh(key, ttlMillis);
+            if (tags == null) {
+                tags = loader.load();
+                put(key, tags);
+            }
+            mine.complete(tags);
+            return tags;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    TagList getIfFresh(String key, long ttlMillis) {
+        synchronized (entries) {
+            TagList cached = entries.get(key);
+            if (cached != null && now() - cached.getFetchedAt() < ttlMillis) {
+                return cached;
+            }
+            return null;
+        }
+    }
+
+    void put(String key, TagList tags) {
+        synchronized (entries) {
+            entries.put(key, tags);
+        }
+    }
+
+    /**
+     * Stores a list only if that doesn't evict another one, for lists nobody has
+     * asked for yet, such as those of a catalog scan. Returns whether it was stored.
+     */
+    boolean offer(String key, TagList tags) {
+        synchronized (entries) {
+            if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+                return false;
+            }
+            entries.put(key, tags);
+            return true;
+        }
+    }
+
+    List<String> keys() {
+        synchronized (entries) {
+            return new ArrayList<>(entries.keySet());
+        }
+    }
+
+    /**
+     * Replaces the cached lists whose keys match. Returns how many were changed.
+     */
+    int update(Predicate<String> keys, UnaryOperator<TagList> change) {
+        int updated = 0;
+        synchronized (entries) {
+            for (Map.Entry<String, TagList> entry : entries.entrySet()) {
+                if (keys.test(entry.getKey())) {
+                    entry.setValue(change.apply(entry.getValue()));
+                    updated++;
+                }
+            }
+        }
+        return updated;
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static TagList await(CompletableFuture<TagList> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for tags", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Streams the tags of a /tags/list response, e.g. {"name": "x", "tags": ["1.0", "1.1"]},
+ * to a consumer without building the whole list in memory. The same goes for the
+ * repositories of a /_catalog response.
+ */
+class TagListReader {
+
+    static int read(Reader in, Consumer<String> consumer) throws IOException {
+        return read(in, "tags", consumer);
+    }
+
+    static int read(Reader in, String field, Consumer<String> consumer) throws IOException {
+        int count = 0;
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    consumer.accept(reader.nextString());
+                    count++;
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return count;
+    }
+}
@@ -0,0 +1,179 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The ways tags can be ordered to find the latest one. Each order can turn a tag
+ * into a sort key, a string whose natural order is the order of the tags. Only
+ * semantic versions are compared by their keys, which selectors keep for the tags
+ * they hold on to; the other orders compare the tags themselves.
+ */
+enum TagOrder {
+
+    /**
+     * Runs of digits compared as numbers, everything else as characters; the
+     * order of TagVersionComparator.
+     */
+    NATURAL {
+        @Override
+        String sortKey(String tag) {
+            StringBuilder key = new StringBuilder(tag.length() + 4);
+            int i = 0;
+            while (i < tag.length()) {
+                char c = tag.charAt(i);
+                if (!isDigit(c)) {
+                    key.append(c);
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (start < tag.length() && tag.charAt(start) == '0') {
+                    start++;
+                }
+                int end = start;
+                while (end < tag.length() && isDigit(tag.charAt(end))) {
+                    end++;
+                }
+                // A number sorts as a '0' against other characters, then by length and digits.
+                key.append('0').append((char) (end - start)).append(tag, start, end);
+                i = end;
+            }
+            return key.toString();
+        }
+
+        @Override
+        int compare(String first, String second) {
+            return TagVersionComparator.INSTANCE.compare(first, second);
+        }
+    },
+
+    /**
+     * Semantic Versioning 2.0, with an optional leading "v". A pre-release is
+     * older than its release, and build metadata is ignored. Tags that aren't
+     * versions are older than all that are, and ordered naturally among themselves.
+     */
+    SEMVER {
+        @Override
+        String sortKey(String tag) {
+            Matcher version = SEMANTIC_VERSION.matcher(tag);
+            if (!version.matches()) {
+                return NOT_A_VERSION + NATURAL.sortKey(tag);
+            }
+            StringBuilder key = new StringBuilder(VERSION);
+            for (int group = 1; group <= 3; group++) {
+                number(key, version.group(group));
+            }
+            String preRelease = version.group(4);
+            if (preRelease == null) {
+                return key.append(RELEASE).toString();
+            }
+            for (String identifier : preRelease.split("\\.")) {
+                if (identifier.chars().allMatch(c -> isDigit((char) c))) {
+                    number(key.append(NUMERIC_IDENTIFIER), identifier);
+                } else {
+                    key.append(TEXT_IDENTIFIER).append(identifier);
+                }
+            }
+            // Ends the identifiers below any that could follow, so fewer sort first.
+            return key.append(END_OF_IDENTIFIERS).toString();
+        }
+
+        @Override
+        boolean hasSortKeys() {
+            return true;
+        }
+    },
+
+    /**
+     * Plain string order.
+     */
+    LEXICAL {
+        @Override
+        String sortKey(String tag) {
+            return tag;
+        }
+
+        @Override
+        int compare(String first, String second) {
+            return first.compareTo(second);
+        }
+    },
+
+    /**
+     * The most recently built image first, by the creation time in its config.
+     * That is only known after fetching it, so the latest few tags in natural
+     * order are selected first, and then ordered by the poller.
+     */
+    PUSHED {
+        @Override
+        String sortKey(String tag) {
+            return NATURAL.sortKey(tag);
+        }
+
+        @Override
+        int compare(String first, String second) {
+            return TagVersionComparator.INSTANCE.compare(first, second);
+        }
+    };
+
+    private static final Pattern SEMANTIC_VERSION = Pattern.compile(
+            "v?(0|[1-9][0-9]*)\\.(0|[1-9][0-9]*)\\.(0|[1-9][0-9]*)" +
+            "(?:-((?:0|[1-9][0-9]*|[0-9]*[a-zA-Z-][0-9a-zA-Z-]*)(?:\\.(?:0|[1-9][0-9]*|[0-9]*[a-zA-Z-][0-9a-zA-Z-]*))*))?" +
+            "(?:\\+[0-9a-zA-Z-]+(?:\\.[0-9a-zA-Z-]+)*)?");
+
+    // Markers that sort below every character a version can contain.
+    private static final char NOT_A_VERSION = '\u0000';
+    private static final char VERSION = '\u0001';
+    private static final char END_OF_IDENTIFIERS = '\u0001';
+    private static final char NUMERIC_IDENTIFIER = '\u0002';
+    private static final char TEXT_IDENTIFIER = '\u0003';
+    private static final char RELEASE = '\uffff';
+
+    abstract String sortKey(String tag);
+
+    int compare(String first, String second) {
+        return sortKey(first).compareTo(sortKey(second));
+    }
+
+    /**
+     * Whether tags are compared by their sort keys, so that keys are worth keeping
+     * for the tags compared again and again.
+     */
+    boolean hasSortKeys() {
+        return false;
+    }
+
+    /**
+     * Whether latest should replace previous as a package's revision. By push
+     * time, any other tag is, since the poller found it was pushed more recently.
+     */
+    boolean isNewer(String previous, String latest) {
+        return this == PUSHED ? !latest.equals(previous) : compare(previous, latest) <= 0;
+    }
+
+    /**
+     * The order named by a package property; natural if it's not set. Throws
+     * IllegalArgumentException for any other name.
+     */
+    static TagOrder of(String property) {
+        if (property == null || property.trim().isEmpty()) {
+            return NATURAL;
+        }
+        for (TagOrder order : values()) {
+            if (order.name().equalsIgnoreCase(property.trim())) {
+                return order;
+            }
+        }
+        throw new IllegalArgumentException("Unknown tag order: " + property.trim());
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // By length, then digits; the patterns leave no leading zeros.
+    private static void number(StringBuilder key, String digits) {
+        key.append((char) digits.length()).append(digits);
+    }
+}
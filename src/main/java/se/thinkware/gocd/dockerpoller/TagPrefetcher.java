@@ -0,0 +1,279 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Refreshes the tag lists of images GoCD polls in the background, so that polls can
+ * be answered from the tag list cache without waiting for the registry.
+ *
+ * Each image is refreshed on its own interval, with some jitter so that images
+ * tracked at the same time don't hit the registry together. Refreshes run on a
+ * small pool of workers; when they fall behind, images GoCD asked for most
+ * recently go first. Images GoCD stops asking for are dropped after a while.
+ *
+ * Registry catalogs are scanned here too, one at a time on a thread of their own,
+ * once per interval. A scan that fails is retried after the interval or the
+ * backoff RegistryThrottle would use, whichever is longer.
+ */
+class TagPrefetcher {
+
+    static final int WORKERS = 4;
+    static final double JITTER = 0.1;
+    // Intervals without a poll before an image is no longer refreshed.
+    static final int IDLE_INTERVALS = 10;
+
+    private static PollLog LOGGER = PollLog.getLogFor(TagPrefetcher.class);
+
+    interface Fetcher {
+        TagList fetch(String url, RegistryCredentials account, int pageSize) throws IOException;
+    }
+
+    interface Scanner {
+        CatalogScan scan() throws IOException;
+    }
+
+    // Each account polling an image refreshes its own list with its own credentials.
+    class Image implements Runnable, Comparable<Image> {
+        final String url;
+        final RegistryCredentials account;
+        volatile int pageSize;
+        volatile long intervalMillis;
+        volatile long polledAt;
+        final AtomicBoolean queued = new AtomicBoolean();
+
+        Image(String url) {
+            this(url, null);
+        }
+
+        Image(String url, RegistryCredentials account) {
+            this.url = url;
+            this.account = account;
+        }
+
+        String key() {
+            return RegistryCredentials.keyOf(url, account);
+        }
+
+        @Override
+        public void run() {
+            try {
+                refresh(this);
+            } finally {
+                queued.set(false);
+                schedule(this);
+            }
+        }
+
+        // Most recently polled first.
+        @Override
+        public int compareTo(Image that) {
+            return Long.compare(that.polledAt, polledAt);
+        }
+    }
+
+    // Scanned with the settings of the last poll asking for it.
+    class Catalog implements Runnable {
+        final String url;
+        final String key;
+        volatile Scanner scanner;
+        volatile long intervalMillis;
+        volatile long polledAt;
+        final AtomicBoolean started = new AtomicBoolean();
+        private int failures;
+
+        Catalog(String url, String key) {
+            this.url = url;
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            if (clock.getAsLong() - polledAt > IDLE_INTERVALS * intervalMillis) {
+                catalogs.remove(key, this);
+                LOGGER.debug(() -> String.format("Stopped scanning %s", url));
+                return;
+            }
+            long delay;
+            try {
+                scanner.scan();
+                failures = 0;
+                delay = jittered(intervalMillis, ThreadLocalRandom.current().nextDouble());
+            } catch (IOException | RuntimeException e) {
+                failures++;
+                delay = retryDelay(intervalMillis, failures);
+                LOGGER.warnLimited(url, () -> String.format("Could not scan %s: %s", url, e.getMessage()));
+            }
+            scheduleScan(this, delay);
+        }
+    }
+
+    private final Fetcher fetcher;
+    private final TagListCache cache;
+    private final LongSupplier clock;
+    private final Map<String, Image> images = new ConcurrentHashMap<>();
+    private final Map<String, Catalog> catalogs = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService scanner;
+
+    TagPrefetcher(Fetcher fetcher, TagListCache cache) {
+        this(fetcher, cache, cache::now);
+    }
+
+    TagPrefetcher(Fetcher fetcher, TagListCache cache, LongSupplier clock) {
+        this.fetcher = fetcher;
+        this.cache = cache;
+        this.clock = clock;
+    }
+
+    /**
+     * Called for every poll of an image that should be kept fresh. The first call
+     * starts refreshing it.
+     */
+    void track(String url, RegistryCredentials account, int pageSize, long intervalMillis) {
+        Image image = images.computeIfAbsent(RegistryCredentials.keyOf(url, account), key -> new Image(url, account));
+        image.pageSize = pageSize;
+        image.intervalMillis = intervalMillis;
+        boolean isNew = image.polledAt == 0;
+        image.polledAt = clock.getAsLong();
+        if (isNew) {
+            schedule(image);
+        }
+    }
+
+    boolean isTracked(String url) {
+        for (Image image : images.values()) {
+            if (image.url.equals(url)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called for every poll that wants the catalog of its registry scanned. The
+     * first call starts the scans, the first one at once.
+     */
+    void trackCatalog(String url, RegistryCredentials account, long intervalMillis, Scanner scanner) {
+        Catalog catalog = catalogs.computeIfAbsent(RegistryCredentials.keyOf(url, account), key -> new Catalog(url, key));
+        catalog.scanner = scanner;
+        catalog.intervalMillis = intervalMillis;
+        catalog.polledAt = clock.getAsLong();
+        if (catalog.started.compareAndSet(false, true)) {
+            scheduleScan(catalog, 0);
+        }
+    }
+
+    boolean isScanned(String url) {
+        for (Catalog catalog : catalogs.values()) {
+            if (catalog.url.equals(url)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Never sooner than the interval, and backing off like RegistryThrottle while failures go on.
+    static long retryDelay(long intervalMillis, int failures) {
+        return Math.max(intervalMillis, RegistryThrottle.backoffMillis(failures));
+    }
+
+    void refresh(Image image) {
+        if (isIdle(image)) {
+            images.remove(image.key(), image);
+            LOGGER.debug(() -> String.format("Stopped refreshing %s", image.url));
+            return;
+        }
+        try {
+            cache.put(image.key(), fetcher.fetch(image.url, image.account, image.pageSize));
+        } catch (IOException | RuntimeException e) {
+            // The next poll fetches it itself if it gets too stale.
+            LOGGER.warnLimited(image.url, () -> String.format("Could not refresh %s: %s", image.url, e.getMessage()));
+        }
+    }
+
+    boolean isIdle(Image image) {
+        return clock.getAsLong() - image.polledAt > IDLE_INTERVALS * image.intervalMillis;
+    }
+
+    static long jittered(long intervalMillis, double random) {
+        return (long) (intervalMillis * (1 - JITTER + 2 * JITTER * random));
+    }
+
+    private void schedule(Image image) {
+        if (!images.containsKey(image.key())) {
+            return;
+        }
+        long delay = jittered(image.intervalMillis, ThreadLocalRandom.current().nextDouble());
+        try {
+            executors().schedule(() -> {
+                if (image.queued.compareAndSet(false, true)) {
+                    try {
+                        workers.execute(image);
+                    } catch (RejectedExecutionException e) {
+                        image.queued.set(false);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down while a refresh was running; there is nothing more to schedule.
+        }
+    }
+
+    private void scheduleScan(Catalog catalog, long delay) {
+        try {
+            scanners().schedule(catalog, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down while a scan was running.
+        }
+    }
+
+    private synchronized ScheduledExecutorService scanners() {
+        if (scanner == null) {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> daemon(runnable, "docker-poller-catalog-scan"));
+            timer.setRemoveOnCancelPolicy(true);
+            scanner = timer;
+        }
+        return scanner;
+    }
+
+    // Threads are only started once there is something to refresh.
+    private synchronized ScheduledExecutorService executors() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> daemon(runnable, "docker-poller-prefetch-timer"));
+            timer.setRemoveOnCancelPolicy(true);
+            workers = new ThreadPoolExecutor(WORKERS, WORKERS, 1, TimeUnit.MINUTES,
+                    new PriorityBlockingQueue<>(), runnable -> daemon(runnable, "docker-poller-prefetch"));
+            workers.allowCoreThreadTimeOut(true);
+            scheduler = timer;
+        }
+        return scheduler;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+        }
+        if (scanner != null) {
+            scanner.shutdownNow();
+        }
+    }
+}
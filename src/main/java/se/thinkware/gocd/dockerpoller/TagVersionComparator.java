@@ -0,0 +1,83 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.Comparator;
+
+/**
+ * Orders tags the way comparing expandNums() of both tags does, i.e. with every run of
+ * digits compared as a number, but without building any strings. Digit runs are compared
+ * by significant length and then digit by digit, so they can be arbitrarily long; a 14
+ * digit timestamp sorts above a 6 digit build number.
+ */
+class TagVersionComparator implements Comparator<String> {
+
+    static final TagVersionComparator INSTANCE = new TagVersionComparator();
+
+    @Override
+    public int compare(String first, String second) {
+        int firstLength = first.length();
+        int secondLength = second.length();
+        int i = 0;
+        int j = 0;
+        while (i < firstLength && j < secondLength) {
+            char a = first.charAt(i);
+            char b = second.charAt(j);
+            boolean aIsDigit = isDigit(a);
+            boolean bIsDigit = isDigit(b);
+            if (aIsDigit && bIsDigit) {
+                int aStart = skipZeros(first, i);
+                int bStart = skipZeros(second, j);
+                int aEnd = endOfDigits(first, aStart);
+                int bEnd = endOfDigits(second, bStart);
+                int aDigits = aEnd - aStart;
+                int bDigits = bEnd - bStart;
+                if (aDigits != bDigits) {
+                    return aDigits < bDigits ? -1 : 1;
+                }
+                for (int k = 0; k < aDigits; k++) {
+                    int diff = first.charAt(aStart + k) - second.charAt(bStart + k);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                i = aEnd;
+                j = bEnd;
+            } else if (aIsDigit) {
+                // An expanded number always starts with a digit.
+                return '0' - b;
+            } else if (bIsDigit) {
+                return a - '0';
+            } else {
+                if (a != b) {
+                    return a - b;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (i < firstLength) {
+            return 1;
+        }
+        if (j < secondLength) {
+            return -1;
+        }
+        return 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipZeros(String s, int index) {
+        while (index < s.length() && s.charAt(index) == '0') {
+            index++;
+        }
+        return index;
+    }
+
+    private static int endOfDigits(String s, int index) {
+        while (index < s.length() && isDigit(s.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+}
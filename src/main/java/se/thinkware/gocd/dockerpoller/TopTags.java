@@ -0,0 +1,84 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the few biggest tags accepted by a filter while tags are streamed past it.
+ * They are kept in a min-heap of at most that many tags, so each tag costs one
+ * comparison with the smallest kept, and only the tags that make it cost more.
+ */
+class TopTags implements Consumer<String> {
+
+    static class Entry {
+        final String tag;
+        // Only known while selecting for orders that compare sort keys.
+        final String sortKey;
+        // Of equal tags, the later one is bigger, as with LatestTagSelector.
+        final long sequence;
+
+        Entry(String tag, String sortKey, long sequence) {
+            this.tag = tag;
+            this.sortKey = sortKey;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Predicate<String> filter;
+    private final TagOrder order;
+    private final int count;
+    private final PriorityQueue<Entry> smallestFirst;
+    private long matching = 0;
+
+    TopTags(Predicate<String> filter, TagOrder order, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Can't keep " + count + " tags");
+        }
+        this.filter = filter;
+        this.order = order;
+        this.count = count;
+        this.smallestFirst = new PriorityQueue<>(count, this::compare);
+    }
+
+    @Override
+    public void accept(String tag) {
+        if (!filter.test(tag)) {
+            return;
+        }
+        Entry entry = new Entry(tag, order.hasSortKeys() ? order.sortKey(tag) : null, matching++);
+        if (smallestFirst.size() < count) {
+            smallestFirst.add(entry);
+        } else if (compare(entry, smallestFirst.peek()) > 0) {
+            smallestFirst.poll();
+            smallestFirst.add(entry);
+        }
+    }
+
+    private int compare(Entry first, Entry second) {
+        int compared = first.sortKey != null
+                ? first.sortKey.compareTo(second.sortKey)
+                : order.compare(first.tag, second.tag);
+        return compared != 0 ? compared : Long.compare(first.sequence, second.sequence);
+    }
+
+    /**
+     * The tags kept, biggest first, with their sort keys.
+     */
+    List<Entry> getTop() {
+        List<Entry> kept = new ArrayList<>(smallestFirst);
+        kept.sort(Collections.reverseOrder(this::compare));
+        List<Entry> top = new ArrayList<>(kept.size());
+        for (Entry entry : kept) {
+            top.add(entry.sortKey != null ? entry : new Entry(entry.tag, order.sortKey(entry.tag), entry.sequence));
+        }
+        return top;
+    }
+
+    long getMatching() {
+        return matching;
+    }
+}
@@ -0,0 +1,153 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A small HTTP listener for registry webhooks, so that pushed tags are known at
+ * once instead of at the next poll. It is only started if the system properties
+ * gocd.dockerpoller.webhook.port and gocd.dockerpoller.webhook.secret are both
+ * set, and requests must carry the secret, as "Authorization: Bearer <secret>",
+ * as the plain Authorization header Harbor sends, or as GitLab's X-Gitlab-Token.
+ * It listens on the loopback interface unless gocd.dockerpoller.webhook.address
+ * names another one.
+ */
+class WebhookReceiver {
+
+    static final String PORT_PROPERTY = "gocd.dockerpoller.webhook.port";
+    static final String SECRET_PROPERTY = "gocd.dockerpoller.webhook.secret";
+    static final String ADDRESS_PROPERTY = "gocd.dockerpoller.webhook.address";
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private static PollLog LOGGER = PollLog.getLogFor(WebhookReceiver.class);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String secret;
+    private final Consumer<TagEvent> listener;
+
+    WebhookReceiver(InetSocketAddress address, String secret, Consumer<TagEvent> listener) throws IOException {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A webhook secret is required");
+        }
+        this.secret = secret;
+        this.listener = listener;
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "docker-poller-webhook");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+    }
+
+    // Null unless a port is configured; a receiver that can't start is logged, not fatal.
+    static WebhookReceiver configured(Consumer<TagEvent> listener) {
+        String port = System.getProperty(PORT_PROPERTY);
+        if (port == null || port.trim().isEmpty()) {
+            return null;
+        }
+        String secret = System.getProperty(SECRET_PROPERTY);
+        if (secret == null || secret.isEmpty()) {
+            // Anyone who can reach the port could otherwise rewrite our tag lists.
+            LOGGER.error(String.format("Not listening for registry webhooks on port %s: %s is not set", port, SECRET_PROPERTY));
+            return null;
+        }
+        String address = System.getProperty(ADDRESS_PROPERTY);
+        try {
+            InetAddress host = address == null || address.trim().isEmpty()
+                    ? InetAddress.getLoopbackAddress()
+                    : InetAddress.getByName(address.trim());
+            WebhookReceiver receiver = new WebhookReceiver(
+                    new InetSocketAddress(host, Integer.parseInt(port.trim())), secret, listener);
+            receiver.start();
+            LOGGER.info(String.format("Listening for registry webhooks on %s port %d", host.getHostAddress(), receiver.getPort()));
+            return receiver;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.error(String.format("Could not listen for registry webhooks on port %s: %s", port, e.getMessage()));
+            return null;
+        }
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Only POST is supported");
+            } else if (!isAuthorized(exchange)) {
+                respond(exchange, 401, "Wrong or missing secret");
+            } else {
+                List<TagEvent> events = TagEvent.parse(readBody(exchange.getRequestBody()));
+                for (TagEvent event : events) {
+                    LOGGER.debug(() -> "Webhook: " + event);
+                    listener.accept(event);
+                }
+                respond(exchange, 202, events.size() + " tag events");
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            respond(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String gitlabToken = exchange.getRequestHeaders().getFirst("X-Gitlab-Token");
+        return matches(authorization, secret) || matches(authorization, "Bearer " + secret) || matches(gitlabToken, secret);
+    }
+
+    // Constant time, so the secret can't be guessed from response times.
+    private static boolean matches(String given, String expected) {
+        return given != null && MessageDigest.isEqual(
+                given.getBytes(StandardCharsets.UTF_8), expected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Body too large");
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package se.thinkware.gocd.dockerpoller.message;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A bulk request for the latest revisions of many packages. The previous revision
+ * of each package is optional.
+ */
+public class LatestPackageRevisionsMessage {
+
+    @Expose
+    @SerializedName("packages")
+    private List<LatestPackageRevisionSinceMessage> packages;
+
+    public List<LatestPackageRevisionSinceMessage> getPackages() {
+        return packages == null ? Collections.emptyList() : packages;
+    }
+}
@@ -0,0 +1,47 @@
+package se.thinkware.gocd.dockerpoller.message;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Map;
+
+/**
+ * A request for the biggest tags of a package. The count is optional, and
+ * digests are only looked up if asked for.
+ */
+public class TopTagsMessage {
+
+    static final int DEFAULT_COUNT = 10;
+
+    @Expose
+    @SerializedName("repository-configuration")
+    private Map<String, PackageMaterialProperty> repositoryConfiguration;
+
+    @Expose
+    @SerializedName("package-configuration")
+    private Map<String, PackageMaterialProperty> packageConfiguration;
+
+    @Expose
+    @SerializedName("count")
+    private Integer count;
+
+    @Expose
+    @SerializedName("digests")
+    private Boolean digests;
+
+    public PackageMaterialProperties getRepositoryConfiguration() {
+        return new PackageMaterialProperties(repositoryConfiguration);
+    }
+
+    public PackageMaterialProperties getPackageConfiguration() {
+        return new PackageMaterialProperties(packageConfiguration);
+    }
+
+    public int getCount() {
+        return count == null ? DEFAULT_COUNT : count;
+    }
+
+    public boolean withDigests() {
+        return digests != null && digests;
+    }
+}
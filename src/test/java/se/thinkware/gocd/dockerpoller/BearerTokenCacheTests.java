@@ -0,0 +1,28 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BearerTokenCacheTests {
+
+    private static final BearerTokenCache.Challenge CHALLENGE =
+            new BearerTokenCache.Challenge("https://auth/token", "registry", "repository:lib/a:pull");
+
+    @Test
+    void expiresFromReceiptTest() {
+        AtomicLong now = new AtomicLong(1_500_000_000_000L);
+        BearerTokenCache tokens = new BearerTokenCache(now::get);
+        // Issued an hour "ago" by a token service whose clock is behind ours.
+        tokens.put(CHALLENGE, JsonUtil.fromJsonString(
+                "{\"token\":\"t1\",\"expires_in\":300,\"issued_at\":\"2017-07-14T01:40:00Z\"}", DockerToken.class));
+
+        assertEquals("t1", tokens.tokenFor(CHALLENGE));
+        now.addAndGet(290_000);
+        assertEquals("t1", tokens.tokenFor(CHALLENGE));
+        now.addAndGet(10_000);
+        assertNull(tokens.tokenFor(CHALLENGE));
+    }
+}
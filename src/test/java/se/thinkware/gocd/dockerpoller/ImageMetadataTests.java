@@ -0,0 +1,201 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageMetadataTests {
+
+    private static final String CONFIG = "{\n"
+            + "\"architecture\":\"amd64\",\n"
+            + "\"created\":\"2024-03-01T12:30:00.123456789Z\",\n"
+            + "\"config\":{\"Labels\":{\n"
+            + "    \"org.opencontainers.image.revision\":\"0123abcd\",\n"
+            + "    \"org.label-schema.vcs-url\":\"https://git.example.com/app.git\",\n"
+            + "    \"maintainer\":\"Jane <jane@example.com>\"\n"
+            + "}}}";
+
+    @Test
+    void configTest() {
+        ImageMetadata metadata = ImageMetadata.fromConfig("sha256:1234", CONFIG);
+
+        assertEquals("sha256:1234", metadata.getDigest());
+        assertEquals(1709296200123L, metadata.getCreated().getTime());
+        assertEquals("0123abcd", metadata.getRevision());
+        assertEquals("https://git.example.com/app.git", metadata.getSource());
+        assertEquals("Jane <jane@example.com>", metadata.getAuthor());
+        assertEquals(3, metadata.getLabels().size());
+    }
+
+    @Test
+    void configWithoutLabelsTest() {
+        ImageMetadata metadata = ImageMetadata.fromConfig("sha256:1234", "{\"created\":\"not a date\",\"config\":{\"Labels\":null}}");
+
+        assertNull(metadata.getCreated());
+        assertNull(metadata.getRevision());
+        assertNull(metadata.getSource());
+        assertTrue(metadata.getLabels().isEmpty());
+    }
+
+    @Test
+    void ociLabelsWinTest() {
+        ImageMetadata metadata = ImageMetadata.fromConfig("sha256:1234", "{\"config\":{\"Labels\":{"
+                + "\"org.label-schema.vcs-ref\":\"old\",\"org.opencontainers.image.revision\":\"new\","
+                + "\"org.label-schema.url\":\"https://old\",\"org.opencontainers.image.source\":\" \"}}}");
+
+        assertEquals("new", metadata.getRevision());
+        assertEquals("https://old", metadata.getSource());
+    }
+
+    @Test
+    void manifestTest() {
+        assertEquals("sha256:cfg", ImageMetadata.configDigestOf(
+                "{\"schemaVersion\":2,\"config\":{\"digest\":\"sha256:cfg\"},\"layers\":[]}"));
+        assertNull(ImageMetadata.configDigestOf("{\"schemaVersion\":2,\"manifests\":[]}"));
+        assertThrows(IllegalArgumentException.class, () -> ImageMetadata.configDigestOf("<html>"));
+    }
+
+    @Test
+    void defaultManifestTest() {
+        String index = "{\"manifests\":["
+                + "{\"digest\":\"sha256:arm\",\"platform\":{\"os\":\"linux\",\"architecture\":\"arm64\"}},"
+                + "{\"digest\":\"sha256:amd\",\"platform\":{\"os\":\"linux\",\"architecture\":\"amd64\"}}]}";
+        assertEquals("sha256:amd", ImageMetadata.defaultManifestOf(index));
+
+        String armOnly = "{\"manifests\":[{\"digest\":\"sha256:arm\",\"platform\":{\"os\":\"linux\",\"architecture\":\"arm64\"}}]}";
+        assertEquals("sha256:arm", ImageMetadata.defaultManifestOf(armOnly));
+
+        assertNull(ImageMetadata.defaultManifestOf("{\"manifests\":[]}"));
+    }
+
+    @Test
+    void schema1Test() {
+        String manifest = "{\"schemaVersion\":1,\"history\":[{\"v1Compatibility\":"
+                + "\"{\\\"created\\\":\\\"2016-01-02T03:04:05Z\\\",\\\"config\\\":{\\\"Labels\\\":{\\\"org.label-schema.vcs-ref\\\":\\\"abc\\\"}}}\"}]}";
+        ImageMetadata metadata = ImageMetadata.fromSchema1("sha256:old", manifest);
+
+        assertEquals("abc", metadata.getRevision());
+        assertEquals(1451703845000L, metadata.getCreated().getTime());
+        assertNull(ImageMetadata.fromSchema1("sha256:new", "{\"schemaVersion\":2}"));
+    }
+
+    @Test
+    void cacheFetchesEachDigestOnceTest() throws IOException {
+        DigestCache<ImageMetadata> cache = new DigestCache<ImageMetadata>(10);
+        AtomicInteger loads = new AtomicInteger();
+        DigestCache.Loader<ImageMetadata> loader = () -> {
+            loads.incrementAndGet();
+            return ImageMetadata.fromConfig("sha256:1234", CONFIG);
+        };
+
+        ImageMetadata first = cache.get("sha256:1234", loader);
+        ImageMetadata second = cache.get("sha256:1234", loader);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void cacheDoesNotKeepFailuresTest() throws IOException {
+        DigestCache<ImageMetadata> cache = new DigestCache<ImageMetadata>(10);
+
+        assertThrows(IOException.class, () -> cache.get("sha256:1234", () -> {
+            throw new IOException("unreachable");
+        }));
+        assertEquals(0, cache.size());
+
+        assertEquals("0123abcd", cache.get("sha256:1234", () -> ImageMetadata.fromConfig("sha256:1234", CONFIG)).getRevision());
+    }
+
+    @Test
+    void errorReleasesWaitingCallersTest() throws Exception {
+        DigestCache<ImageMetadata> cache = new DigestCache<ImageMetadata>(10);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ImageMetadata> first = executor.submit(() -> cache.get("sha256:1234", () -> {
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new OutOfMemoryError("config too large");
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<ImageMetadata> second = executor.submit(() -> cache.get("sha256:1234", () -> {
+                throw new IOException("should wait for the first fetch");
+            }));
+            release.countDown();
+
+            ExecutionException failed = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertTrue(failed.getCause() instanceof OutOfMemoryError);
+            // The second caller either waited for the first fetch or started after it failed.
+            assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+            assertEquals(0, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cacheEvictsLeastRecentlyUsedTest() throws IOException {
+        DigestCache<ImageMetadata> cache = new DigestCache<ImageMetadata>(2);
+        AtomicInteger loads = new AtomicInteger();
+        DigestCache.Loader<ImageMetadata> loader = () -> {
+            loads.incrementAndGet();
+            return ImageMetadata.fromConfig("sha256:x", CONFIG);
+        };
+
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+        cache.get("a", loader);
+
+        assertEquals(2, cache.size());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void concurrentCallersShareOneFetchTest() throws Exception {
+        DigestCache<ImageMetadata> cache = new DigestCache<ImageMetadata>(10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ImageMetadata> first = executor.submit(() -> cache.get("sha256:1234", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return ImageMetadata.fromConfig("sha256:1234", CONFIG);
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<ImageMetadata> second = executor.submit(() -> cache.get("sha256:1234", () -> {
+                loads.incrementAndGet();
+                return ImageMetadata.fromConfig("sha256:1234", CONFIG);
+            }));
+            release.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
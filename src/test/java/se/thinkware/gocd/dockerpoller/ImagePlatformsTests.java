@@ -0,0 +1,72 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagePlatformsTests {
+
+    @Test
+    void parseTest() {
+        assertEquals(Arrays.asList("linux/amd64", "linux/arm64/v8", "windows/amd64"),
+                ImagePlatforms.parse(" linux/amd64, Linux/ARM64/v8 windows/amd64 "));
+        assertTrue(ImagePlatforms.parse(null).isEmpty());
+        assertTrue(ImagePlatforms.parse("  ").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> ImagePlatforms.parse("amd64"));
+        assertThrows(IllegalArgumentException.class, () -> ImagePlatforms.parse("linux/arm/v7/x"));
+    }
+
+    @Test
+    void indexTest() throws IOException {
+        String index = "{\"mediaType\":\"application/vnd.oci.image.index.v1+json\",\"manifests\":["
+                + "{\"digest\":\"sha256:a\",\"platform\":{\"os\":\"linux\",\"architecture\":\"amd64\"}},"
+                + "{\"digest\":\"sha256:b\",\"platform\":{\"os\":\"linux\",\"architecture\":\"arm64\",\"variant\":\"v8\"}},"
+                + "{\"digest\":\"sha256:c\",\"platform\":{\"os\":\"unknown\",\"architecture\":\"unknown\"}}]}";
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("linux/amd64", "linux/arm64/v8")), ImagePlatforms.ofIndex(index));
+        assertNull(ImagePlatforms.ofIndex("{\"config\":{\"digest\":\"sha256:cfg\"}}"));
+        assertThrows(IOException.class, () -> ImagePlatforms.ofIndex("{\"manifests\":[\"sha256:a\"]}"));
+        assertThrows(IOException.class, () -> ImagePlatforms.ofIndex("not json"));
+    }
+
+    @Test
+    void configTest() throws IOException {
+        assertEquals(Collections.singleton("linux/arm/v7"),
+                ImagePlatforms.ofConfig("{\"os\":\"linux\",\"architecture\":\"arm\",\"variant\":\"v7\",\"config\":{}}"));
+        assertTrue(ImagePlatforms.ofConfig("{\"config\":{}}").isEmpty());
+        assertThrows(IOException.class, () -> ImagePlatforms.ofConfig("[]"));
+    }
+
+    @Test
+    void coversTest() {
+        Set<String> available = new LinkedHashSet<>(Arrays.asList("linux/amd64", "linux/arm64/v8"));
+
+        assertTrue(ImagePlatforms.covers(available, Arrays.asList("linux/amd64", "linux/arm64")));
+        assertTrue(ImagePlatforms.covers(available, Collections.singletonList("linux/arm64/v8")));
+        assertFalse(ImagePlatforms.covers(available, Collections.singletonList("linux/arm64/v7")));
+        assertFalse(ImagePlatforms.covers(available, Arrays.asList("linux/amd64", "linux/s390x")));
+        assertFalse(ImagePlatforms.covers(Collections.singleton("linux/arm64v8"), Collections.singletonList("linux/arm64")));
+    }
+
+    @Test
+    void selectorCandidatesTest() {
+        LatestTagSelector selector = new LatestTagSelector(tag -> !tag.startsWith("x"), 3);
+        for (String tag : Arrays.asList("1.2", "x9", "1.10", "1.1", "1.9", "1.3")) {
+            selector.accept(tag);
+        }
+
+        assertEquals("1.10", selector.getLatest());
+        assertEquals(Arrays.asList("1.10", "1.9", "1.3"), selector.getCandidates());
+        assertEquals(5, selector.getMatching());
+        assertEquals(Collections.singletonList("1.10"), new LatestTagSelector(tag -> true) {{
+            accept("1.2");
+            accept("1.10");
+        }}.getCandidates());
+    }
+}
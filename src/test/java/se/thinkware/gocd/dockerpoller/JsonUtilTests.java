@@ -0,0 +1,59 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionSinceMessage;
+import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonUtilTests {
+
+    // What toJsonString produced before the type adapters were registered.
+    private static String reflectiveJson(Object object) {
+        return new GsonBuilder()
+                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+                .excludeFieldsWithoutExposeAnnotation()
+                .create()
+                .toJson(object);
+    }
+
+    @Test
+    void packageRevisionMessageTest() {
+        PackageRevisionMessage revision = new PackageRevisionMessage("1.2.3", new Date(1508329696789L), "docker", null, null);
+        assertEquals(reflectiveJson(revision), JsonUtil.toJsonString(revision));
+        assertEquals(reflectiveJson(new PackageRevisionMessage()), JsonUtil.toJsonString(new PackageRevisionMessage()));
+    }
+
+    @Test
+    void configurationTest() {
+        PackageRepositoryConfigurationProvider provider = new PackageRepositoryConfigurationProvider();
+        assertEquals(
+                reflectiveJson(provider.repositoryConfiguration().getPropertyMap()),
+                JsonUtil.toJsonString(provider.repositoryConfiguration().getPropertyMap()));
+        assertEquals(
+                reflectiveJson(provider.packageConfiguration().getPropertyMap()),
+                JsonUtil.toJsonString(provider.packageConfiguration().getPropertyMap()));
+    }
+
+    @Test
+    void latestRevisionSinceTest() {
+        String json = "{"
+                + "\"repository-configuration\":{\"DOCKER_REGISTRY_URL\":{\"value\":\"http://xxx/v2/\"}},"
+                + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},\"DOCKER_TAG_FILTER\":{\"value\":\"\"}},"
+                + "\"previous-revision\":{\"revision\":\"1.2\",\"timestamp\":\"2017-10-18T12:34:56.789Z\",\"data\":{\"KEY\":\"value\"}}"
+                + "}";
+
+        LatestPackageRevisionSinceMessage message = JsonUtil.fromJsonString(json, LatestPackageRevisionSinceMessage.class);
+
+        assertEquals("http://xxx/v2/", message.getRepositoryConfiguration().getProperty(Constants.DOCKER_REGISTRY_URL).value());
+        assertEquals("my_docker", message.getPackageConfiguration().getProperty(Constants.DOCKER_IMAGE).value());
+        assertEquals("", message.getPackageConfiguration().getProperty(Constants.DOCKER_TAG_FILTER).value());
+        assertEquals("1.2", message.getPreviousRevision().getRevision());
+        assertNotNull(message.getPreviousRevision().getTimestamp());
+        assertEquals("value", message.getPreviousRevision().getDataFor("KEY"));
+        assertTrue(JsonUtil.toJsonString(message.getPreviousRevision()).endsWith("\"data\":{\"KEY\":\"value\"}}"));
+    }
+}
@@ -3,6 +3,8 @@ package se.thinkware.gocd.dockerpoller;
 import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.http.LowLevelHttpResponse;
 import com.google.api.client.testing.http.MockLowLevelHttpRequest;
 import com.google.api.client.testing.http.MockLowLevelHttpResponse;
@@ -10,14 +12,30 @@ import com.google.api.client.testing.http.MockHttpTransport;
 
 import org.junit.jupiter.api.Test;
 import se.thinkware.gocd.dockerpoller.message.CheckConnectionResultMessage;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionsMessage;
 import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
 import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
 import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
+import se.thinkware.gocd.dockerpoller.message.ValidationResultMessage;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 import java.util.regex.PatternSyntaxException;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -94,6 +112,282 @@ class PackageRepositoryPollerTests {
         }
     };
 
+    private final HttpTransport mockTransportPagedTags = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    if (url.equals("http://xxx/v2/my_docker/tags/list?n=2")) {
+                        response.addHeader("Link", "</v2/my_docker/tags/list?n=2&last=1.11>; rel=\"next\"");
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.11\"]}");
+                    } else if (url.equals("http://xxx/v2/my_docker/tags/list?n=2&last=1.11")) {
+                        response.addHeader("Link", "</v2/my_docker/tags/list?n=2&last=1.3>; rel=\"next\"");
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.100\",\"1.3\"]}");
+                    } else if (url.equals("http://xxx/v2/my_docker/tags/list?n=2&last=1.3")) {
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.2\"]}");
+                    } else {
+                        response.setStatusCode(404);
+                    }
+                    return response;
+                }
+            };
+        }
+    };
+
+    private static class MockConditionalRegistry extends MockHttpTransport {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    requests.add(method + " " + url);
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.equals("http://xxx/v2/my_docker/tags/list")) {
+                        if ("\"v1\"".equals(getFirstHeaderValue("If-None-Match"))) {
+                            response.setStatusCode(304);
+                        } else {
+                            response.setStatusCode(200);
+                            response.addHeader("ETag", "\"v1\"");
+                            response.setContentType("application/json");
+                            response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.0\",\"1.1\"]}");
+                        }
+                    } else if (method.equals("HEAD") && url.equals("http://xxx/v2/my_docker/manifests/1.1")) {
+                        response.setStatusCode(200);
+                        response.addHeader("Docker-Content-Digest", "sha256:1234");
+                    } else {
+                        response.setStatusCode(404);
+                    }
+                    return response;
+                }
+            };
+        }
+    }
+
+    private static class MockCatalogRegistry extends MockHttpTransport {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    requests.add(url);
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    if (url.equals("http://xxx/v2/")) {
+                        response.addHeader("Docker-Distribution-API-Version", "registry/2.0");
+                    } else if (url.equals("http://xxx/v2/_catalog")) {
+                        response.addHeader("Link", "</v2/_catalog?last=lib%2Fb>; rel=\"next\"");
+                        response.setContent("{\"repositories\":[\"lib/a\",\"lib/b\"]}");
+                    } else if (url.equals("http://xxx/v2/_catalog?last=lib/b")) {
+                        response.setContent("{\"repositories\":[\"lib/c\"]}");
+                    } else if (url.matches("http://xxx/v2/lib/[ab]/tags/list")) {
+                        response.setContent("{\"tags\":[\"1.0\",\"1.1\"]}");
+                    } else {
+                        response.setStatusCode(404);
+                    }
+                    return response;
+                }
+            };
+        }
+    }
+
+    private static class MockMetadataRegistry extends MockHttpTransport {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    requests.add(method + " " + url);
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    if (url.equals("http://xxx/v2/my_docker/tags/list")) {
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.0\",\"1.1\"]}");
+                    } else if (method.equals("HEAD") && url.equals("http://xxx/v2/my_docker/manifests/1.1")) {
+                        response.addHeader("Docker-Content-Digest", "sha256:index");
+                    } else if (url.equals("http://xxx/v2/my_docker/manifests/sha256:index")) {
+                        response.setContent("{\"manifests\":["
+                                + "{\"digest\":\"sha256:arm\",\"platform\":{\"os\":\"linux\",\"architecture\":\"arm64\"}},"
+                                + "{\"digest\":\"sha256:amd\",\"platform\":{\"os\":\"linux\",\"architecture\":\"amd64\"}}]}");
+                    } else if (url.equals("http://xxx/v2/my_docker/manifests/sha256:amd")) {
+                        response.setContent("{\"config\":{\"digest\":\"sha256:cfg\"}}");
+                    } else if (url.equals("http://xxx/v2/my_docker/blobs/sha256:cfg")) {
+                        response.setContent("{\"created\":\"2024-03-01T12:30:00Z\",\"config\":{\"Labels\":{"
+                                + "\"org.opencontainers.image.revision\":\"0123abcd\","
+                                + "\"org.opencontainers.image.source\":\"https://git.example.com/app\"}}}");
+                    } else {
+                        response.setStatusCode(404);
+                    }
+                    return response;
+                }
+            };
+        }
+    }
+
+    // Tags 1.1 to 1.10, where 1.4 was rebuilt last, and 1.1 even later.
+    private static class MockPushedRegistry extends MockHttpTransport {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    requests.add(method + " " + url);
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    String prefix = "http://xxx/v2/my_docker/";
+                    if (url.equals(prefix + "tags/list")) {
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":["
+                                + "\"1.1\",\"1.2\",\"1.3\",\"1.4\",\"1.5\",\"1.6\",\"1.7\",\"1.8\",\"1.9\",\"1.10\"]}");
+                    } else if (method.equals("HEAD") && url.startsWith(prefix + "manifests/1.")) {
+                        response.addHeader("Docker-Content-Digest", "sha256:" + url.substring(url.lastIndexOf('/') + 1));
+                    } else if (url.startsWith(prefix + "manifests/sha256:")) {
+                        response.setContent("{\"config\":{\"digest\":\"sha256:cfg-" + url.substring(url.lastIndexOf(':') + 1) + "\"}}");
+                    } else if (url.startsWith(prefix + "blobs/sha256:cfg-")) {
+                        String tag = url.substring(url.lastIndexOf('-') + 1);
+                        String day = tag.equals("1.1") ? "20" : tag.equals("1.4") ? "10" : "01";
+                        response.setContent("{\"created\":\"2024-03-" + day + "T12:00:00Z\"}");
+                    } else {
+                        response.setStatusCode(404);
+                    }
+                    return response;
+                }
+            };
+        }
+    }
+
+    private static class MockPlatformRegistry extends MockHttpTransport {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        volatile String digestOf12 = "sha256:amdonly";
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    requests.add(method + " " + url);
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    if (url.equals("http://xxx/v2/my_docker/tags/list")) {
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.0\",\"1.1\",\"1.2\"]}");
+                    } else if (method.equals("HEAD") && url.equals("http://xxx/v2/my_docker/manifests/1.2")) {
+                        response.addHeader("Docker-Content-Digest", digestOf12);
+                    } else if (method.equals("HEAD") && url.equals("http://xxx/v2/my_docker/manifests/1.1")) {
+                        response.addHeader("Docker-Content-Digest", "sha256:both");
+                    } else if (method.equals("HEAD") && url.equals("http://xxx/v2/my_docker/manifests/1.0")) {
+                        response.addHeader("Docker-Content-Digest", "sha256:single");
+                    } else if (url.equals("http://xxx/v2/my_docker/manifests/sha256:amdonly")) {
+                        response.setContent("{\"manifests\":["
+                                + "{\"digest\":\"sha256:a\",\"platform\":{\"os\":\"linux\",\"architecture\":\"amd64\"}}]}");
+                    } else if (url.equals("http://xxx/v2/my_docker/manifests/sha256:both")) {
+                        response.setContent("{\"manifests\":["
+                                + "{\"digest\":\"sha256:a\",\"platform\":{\"os\":\"linux\",\"architecture\":\"amd64\"}},"
+                                + "{\"digest\":\"sha256:b\",\"platform\":{\"os\":\"linux\",\"architecture\":\"arm64\",\"variant\":\"v8\"}}]}");
+                    } else if (url.equals("http://xxx/v2/my_docker/manifests/sha256:single")) {
+                        response.setContent("{\"config\":{\"digest\":\"sha256:cfg\"}}");
+                    } else if (url.equals("http://xxx/v2/my_docker/blobs/sha256:cfg")) {
+                        response.setContent("{\"os\":\"linux\",\"architecture\":\"amd64\"}");
+                    } else {
+                        response.setStatusCode(404);
+                    }
+                    return response;
+                }
+            };
+        }
+    }
+
+    private static class MockPrivateRegistry extends MockHttpTransport {
+        static final String BASIC = "Basic " + Base64.getEncoder().encodeToString("ci:s3cret".getBytes());
+        static final String TOKEN_BASIC = "Basic " + Base64.getEncoder().encodeToString("token:pat".getBytes());
+        final List<String> requests = new ArrayList<>();
+        final Map<String, String> scopes = new HashMap<>();
+        int expiresIn = 300;
+        boolean basicOnly = false;
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    String authorization = getFirstHeaderValue("Authorization");
+                    requests.add(url + (authorization == null ? "" : " " + authorization));
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    response.setContentType("application/json");
+                    String image = url.replaceAll(".*/v2/(.*)/tags/list.*", "$1");
+                    if (url.startsWith("https://auth.xxx/token")) {
+                        if (!BASIC.equals(authorization) && !TOKEN_BASIC.equals(authorization)) {
+                            response.setStatusCode(401);
+                            return response;
+                        }
+                        String token = "token" + (scopes.size() + 1);
+                        scopes.put(token, url);
+                        response.setStatusCode(200);
+                        response.setContent("{\"access_token\":\"" + token + "\",\"expires_in\":" + expiresIn + "}");
+                    } else if (basicOnly ? BASIC.equals(authorization) : authorization != null
+                            && scopes.getOrDefault(authorization.substring(7), "").contains("scope=repository:" + image + ":pull")) {
+                        response.setStatusCode(200);
+                        response.setContent("{\"name\":\"" + image + "\",\"tags\":[\"1.0\",\"1.1\"]}");
+                    } else if (basicOnly) {
+                        response.setStatusCode(401);
+                        response.addHeader("WWW-Authenticate", "Basic realm=\"xxx\"");
+                    } else {
+                        response.setStatusCode(401);
+                        response.addHeader("WWW-Authenticate",
+                                "Bearer realm=\"https://auth.xxx/token\",service=\"xxx\",scope=\"repository:" + image + ":pull\"");
+                    }
+                    return response;
+                }
+            };
+        }
+    }
+
+    private static class MockTokenRegistry extends MockHttpTransport {
+        final List<String> requests = new ArrayList<>();
+        int tokensIssued = 0;
+        String validToken = null;
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    String authorization = getFirstHeaderValue("Authorization");
+                    requests.add(url + (authorization == null ? "" : " " + authorization));
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.startsWith("https://auth.xxx/token")) {
+                        tokensIssued++;
+                        validToken = "token" + tokensIssued;
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.setContent("{\"token\":\"" + validToken + "\",\"expires_in\":300}");
+                    } else if (validToken != null && ("Bearer " + validToken).equals(authorization)) {
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.0\",\"1.1\"]}");
+                    } else {
+                        response.setStatusCode(401);
+                        response.addHeader("WWW-Authenticate",
+                                "Bearer realm=\"https://auth.xxx/token\",service=\"xxx\",scope=\"repository:my_docker:pull\"");
+                    }
+                    return response;
+                }
+            };
+        }
+    }
+
     @Test
     void RepositoryNotFoundTest() {
 
@@ -149,6 +443,66 @@ class PackageRepositoryPollerTests {
         assertEquals(Collections.singletonList("Docker registry found."), status.getMessages());
     }
 
+    @Test
+    void RepositoryTimeoutsTest() {
+
+        List<String> timeouts = new ArrayList<>();
+        HttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public void setTimeout(int connectTimeout, int readTimeout) {
+                        timeouts.add(connectTimeout + "/" + readTimeout);
+                    }
+                };
+            }
+        };
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                transport);
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty name = new PackageMaterialProperty().withValue("registry/name");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_NAME, name);
+        PackageMaterialProperty connectTimeout = new PackageMaterialProperty().withValue("3");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_CONNECT_TIMEOUT, connectTimeout);
+        PackageMaterialProperty readTimeout = new PackageMaterialProperty().withValue("7");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_READ_TIMEOUT, readTimeout);
+
+        poller.checkConnectionToRepository(repositoryConfiguration);
+
+        assertEquals(Collections.singletonList("3000/7000"), timeouts);
+    }
+
+    @Test
+    void PooledTransportTest() {
+
+        RegistryConnections connections = RegistryConnections.pooled();
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("https://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty maxConnections = new PackageMaterialProperty().withValue("4");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_MAX_CONNECTIONS, maxConnections);
+
+        connections.configure(repositoryConfiguration);
+
+        assertTrue(connections.getTransport() instanceof ApacheHttpTransport);
+    }
+
+    @Test
+    void PooledTransportIsOptInTest() {
+
+        assertTrue(RegistryConnections.configured().getTransport() instanceof NetHttpTransport);
+        try {
+            System.setProperty(RegistryConnections.POOLED_PROPERTY, "true");
+            assertTrue(RegistryConnections.configured().getTransport() instanceof ApacheHttpTransport);
+        } finally {
+            System.clearProperty(RegistryConnections.POOLED_PROPERTY);
+        }
+    }
+
     @Test
     void PackageNotFoundTest() {
 
@@ -219,6 +573,227 @@ class PackageRepositoryPollerTests {
         assertEquals(expected, tags);
     }
 
+    @Test
+    void TagFetcherReusesCachedTokenTest() {
+
+        MockTokenRegistry registry = new MockTokenRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        GenericUrl url = new GenericUrl("http://xxx/v2/my_docker/tags/list");
+
+        assertEquals(Arrays.asList("1.0", "1.1"), poller.TagFetcher(url));
+        assertEquals(3, registry.requests.size());
+
+        registry.requests.clear();
+        assertEquals(Arrays.asList("1.0", "1.1"), poller.TagFetcher(url));
+        assertEquals(
+                Collections.singletonList("http://xxx/v2/my_docker/tags/list Bearer token1"),
+                registry.requests);
+        assertEquals(1, registry.tokensIssued);
+    }
+
+    @Test
+    void TagFetcherRenewsRejectedTokenTest() {
+
+        MockTokenRegistry registry = new MockTokenRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        GenericUrl url = new GenericUrl("http://xxx/v2/my_docker/tags/list");
+
+        poller.TagFetcher(url);
+        registry.validToken = "revoked";
+        registry.requests.clear();
+
+        assertEquals(Arrays.asList("1.0", "1.1"), poller.TagFetcher(url));
+        assertEquals(
+                Arrays.asList(
+                        "http://xxx/v2/my_docker/tags/list Bearer token1",
+                        "https://auth.xxx/token?service=xxx&scope=repository:my_docker:pull",
+                        "http://xxx/v2/my_docker/tags/list Bearer token2"),
+                registry.requests);
+    }
+
+    private static PackageMaterialProperties privateRepository(String username, String password) {
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_REGISTRY_URL, new PackageMaterialProperty().withValue("http://xxx/v2/"));
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_USERNAME, new PackageMaterialProperty().withValue(username));
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_PASSWORD, new PackageMaterialProperty().withValue(password));
+        return repositoryConfiguration;
+    }
+
+    private static PackageMaterialProperties imagePackage(String image) {
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue(image));
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(""));
+        return packageConfiguration;
+    }
+
+    @Test
+    void getLatestWithCredentialsTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+        PackageMaterialProperties repositoryConfiguration = privateRepository("ci", "s3cret");
+
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), repositoryConfiguration).getRevision());
+        assertEquals(
+                Arrays.asList(
+                        "http://xxx/v2/lib/a/tags/list",
+                        "https://auth.xxx/token?service=xxx&scope=repository:lib/a:pull&account=ci " + MockPrivateRegistry.BASIC,
+                        "http://xxx/v2/lib/a/tags/list Bearer token1"),
+                registry.requests);
+
+        registry.requests.clear();
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), repositoryConfiguration).getRevision());
+        assertEquals(Collections.singletonList("http://xxx/v2/lib/a/tags/list Bearer token1"), registry.requests);
+
+        // Another account on the same registry doesn't get these tokens.
+        registry.requests.clear();
+        assertNull(poller.getLatestRevision(imagePackage("lib/a"), privateRepository("ci", "wrong")).getRevision());
+        assertFalse(registry.requests.contains("http://xxx/v2/lib/a/tags/list Bearer token1"));
+    }
+
+    @Test
+    void getLatestRenewsSharedTokenUpFrontTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        // Tokens this short lived are renewed whenever they're used.
+        registry.expiresIn = 5;
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+        PackageMaterialProperties repositoryConfiguration = privateRepository("ci", "s3cret");
+
+        poller.getLatestRevision(imagePackage("lib/a"), repositoryConfiguration);
+        poller.getLatestRevision(imagePackage("lib/b"), repositoryConfiguration);
+        registry.requests.clear();
+
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), repositoryConfiguration).getRevision());
+        assertEquals(2, registry.requests.size());
+        assertTrue(registry.requests.get(0).startsWith("https://auth.xxx/token?"));
+        assertTrue(registry.requests.get(0).contains("scope=repository:lib/a:pull"));
+        assertTrue(registry.requests.get(0).contains("scope=repository:lib/b:pull"));
+        assertEquals("http://xxx/v2/lib/a/tags/list Bearer token3", registry.requests.get(1));
+    }
+
+    @Test
+    void getLatestWithBasicAuthTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        registry.basicOnly = true;
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+        PackageMaterialProperties repositoryConfiguration = privateRepository("ci", "s3cret");
+
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), repositoryConfiguration).getRevision());
+        registry.requests.clear();
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/b"), repositoryConfiguration).getRevision());
+        assertEquals(Collections.singletonList("http://xxx/v2/lib/b/tags/list " + MockPrivateRegistry.BASIC), registry.requests);
+    }
+
+    @Test
+    void getLatestWithAccessTokenTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        // The token service takes "pat" in exchange for a token of its own.
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository("", "pat")).getRevision());
+        assertEquals(
+                Arrays.asList(
+                        "http://xxx/v2/lib/a/tags/list",
+                        "https://auth.xxx/token?service=xxx&scope=repository:lib/a:pull " + MockPrivateRegistry.TOKEN_BASIC,
+                        "http://xxx/v2/lib/a/tags/list Bearer token1"),
+                registry.requests);
+
+        registry.requests.clear();
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository("", "pat")).getRevision());
+        assertEquals(Collections.singletonList("http://xxx/v2/lib/a/tags/list Bearer token1"), registry.requests);
+    }
+
+    @Test
+    void getLatestWithRawAccessTokenTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        registry.scopes.put("raw", "scope=repository:lib/a:pull");
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        // The token service refuses "raw", which the registry takes as it is.
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository("", "raw")).getRevision());
+        assertEquals("http://xxx/v2/lib/a/tags/list Bearer raw", registry.requests.get(registry.requests.size() - 1));
+
+        registry.requests.clear();
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository("", "raw")).getRevision());
+        assertEquals(Collections.singletonList("http://xxx/v2/lib/a/tags/list Bearer raw"), registry.requests);
+    }
+
+    @Test
+    void getLatestKeepsAccountsOfSameRegistryApartTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+        PackageMaterialProperties privateRepository = privateRepository("ci", "s3cret");
+        PackageMaterialProperties publicRepository = privateRepository("", "");
+
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository).getRevision());
+        registry.requests.clear();
+
+        // Polled in between, a repository without an account stays anonymous.
+        assertNull(poller.getLatestRevision(imagePackage("lib/a"), publicRepository).getRevision());
+        assertTrue(registry.requests.stream().noneMatch(request ->
+                request.endsWith("Bearer token1") || request.endsWith(MockPrivateRegistry.BASIC)));
+
+        registry.requests.clear();
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository).getRevision());
+        assertEquals(Collections.singletonList("http://xxx/v2/lib/a/tags/list Bearer token1"), registry.requests);
+    }
+
+    @Test
+    void getLatestKeepsCachedTagsOfAccountsApartTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+        PackageMaterialProperties privateRepository = privateRepository("ci", "s3cret");
+        PackageMaterialProperties publicRepository = privateRepository("", "");
+        for (PackageMaterialProperties repository : Arrays.asList(privateRepository, publicRepository)) {
+            repository.addPackageMaterialProperty(Constants.DOCKER_TAG_CACHE_TTL, new PackageMaterialProperty().withValue("60"));
+        }
+
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository).getRevision());
+        // The list the account fetched is not served to a repository without it.
+        assertNull(poller.getLatestRevision(imagePackage("lib/a"), publicRepository).getRevision());
+        registry.requests.clear();
+        assertEquals("1.1", poller.getLatestRevision(imagePackage("lib/a"), privateRepository).getRevision());
+        assertTrue(registry.requests.isEmpty());
+    }
+
     @Test
     void getLatestTest() {
 
@@ -246,6 +821,35 @@ class PackageRepositoryPollerTests {
         assertEquals("1.100", dockerImage.getRevision());
     }
 
+    @Test
+    void getLatestPagedTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportPagedTags
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty pageSize = new PackageMaterialProperty().withValue("2");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_PAGE_SIZE, pageSize);
+
+
+        PackageRevisionMessage dockerImage = poller.getLatestRevision(
+                packageConfiguration,
+                repositoryConfiguration
+        );
+
+        assertEquals("1.100", dockerImage.getRevision());
+    }
+
     @Test
     void getLatestUsingInvalidFilterTest() {
 
@@ -282,6 +886,24 @@ class PackageRepositoryPollerTests {
         assertTrue(thrown.getMessage().contains(dockerRegistryUrl));
     }
 
+    @Test
+    void validateInvalidFilterTest() {
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("*.starDotIsAnInvalidFilter");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        ValidationResultMessage result =
+                new PackageRepositoryConfigurationProvider().validatePackageConfiguration(packageConfiguration);
+
+        assertTrue(result.failure());
+        assertEquals(
+                Collections.singletonList("Invalid docker tag filter: Dangling meta character '*'"),
+                result.getMessages());
+    }
+
     @Test
     void getLatestEndsWith1Test() {
 
@@ -309,6 +931,569 @@ class PackageRepositoryPollerTests {
         assertEquals("1.11", dockerImage.getRevision());
     }
 
+    @Test
+    void getLatestSinceNotModifiedTest() {
+
+        MockConditionalRegistry registry = new MockConditionalRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty conditional = new PackageMaterialProperty().withValue("true");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_CONDITIONAL_POLLING, conditional);
+
+        PackageRevisionMessage first = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals("1.1", first.getRevision());
+        assertEquals("sha256:1234", first.getDataFor(Constants.DOCKER_MANIFEST_DIGEST));
+        assertEquals("\"v1\"", first.getDataFor(Constants.DOCKER_TAG_LIST_ETAG));
+
+        registry.requests.clear();
+        PackageRevisionMessage second = poller.getLatestRevisionSince(
+                packageConfiguration,
+                repositoryConfiguration,
+                first
+        );
+
+        assertEquals("1.1", second.getRevision());
+        assertEquals(
+                Arrays.asList(
+                        "GET http://xxx/v2/my_docker/tags/list",
+                        "HEAD http://xxx/v2/my_docker/manifests/1.1"),
+                registry.requests);
+    }
+
+    @Test
+    void getLatestWithImageMetadataTest() {
+
+        MockMetadataRegistry registry = new MockMetadataRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty metadata = new PackageMaterialProperty().withValue("true");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE_METADATA, metadata);
+
+        PackageRevisionMessage first = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals("1.1", first.getRevision());
+        assertEquals(1709296200000L, first.getTimestamp().getTime());
+        assertEquals("0123abcd", first.getRevisionComment());
+        assertEquals("https://git.example.com/app", first.getTrackbackUrl());
+        assertEquals("sha256:index", first.getDataFor(Constants.DOCKER_MANIFEST_DIGEST));
+        assertEquals("0123abcd", first.getDataFor(Constants.DOCKER_IMAGE_REVISION));
+        assertEquals("https://git.example.com/app", first.getDataFor(Constants.DOCKER_IMAGE_SOURCE));
+        assertNull(first.getDataFor(Constants.DOCKER_TAG_LIST_ETAG));
+
+        registry.requests.clear();
+        PackageRevisionMessage second = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals("0123abcd", second.getRevisionComment());
+        assertEquals(
+                Arrays.asList(
+                        "GET http://xxx/v2/my_docker/tags/list",
+                        "HEAD http://xxx/v2/my_docker/manifests/1.1"),
+                registry.requests);
+    }
+
+    @Test
+    void getLatestByPushTimeTest() {
+
+        MockPushedRegistry registry = new MockPushedRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        PackageMaterialProperties packageConfiguration = imagePackage("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_ORDER, new PackageMaterialProperty().withValue("pushed"));
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_REGISTRY_URL, new PackageMaterialProperty().withValue("http://xxx/v2/"));
+
+        PackageRevisionMessage latest = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals("1.4", latest.getRevision());
+        assertEquals("sha256:1.4", latest.getDataFor(Constants.DOCKER_MANIFEST_DIGEST));
+        // Only the latest tags in natural order are looked at.
+        assertFalse(registry.requests.contains("HEAD http://xxx/v2/my_docker/manifests/1.1"));
+        assertTrue(registry.requests.contains("HEAD http://xxx/v2/my_docker/manifests/1.10"));
+
+        registry.requests.clear();
+        assertNull(poller.getLatestRevisionSince(packageConfiguration, repositoryConfiguration, latest).getRevision());
+        assertFalse(registry.requests.contains("GET http://xxx/v2/my_docker/blobs/sha256:cfg-1.4"));
+
+        PackageRevisionMessage bigger = new PackageRevisionMessage("1.10", new Date(), "docker", null, null);
+        assertEquals("1.4", poller.getLatestRevisionSince(packageConfiguration, repositoryConfiguration, bigger).getRevision());
+
+        PackageMaterialProperties natural = imagePackage("my_docker");
+        assertEquals("1.10", poller.getLatestRevision(natural, repositoryConfiguration).getRevision());
+    }
+
+    @Test
+    void getTopTagsTest() throws IOException {
+
+        MockPushedRegistry registry = new MockPushedRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        PackageMaterialProperties packageConfiguration = imagePackage("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue("^1\\.[0-9]$"));
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_REGISTRY_URL, new PackageMaterialProperty().withValue("http://xxx/v2/"));
+
+        Map<String, Object> top = poller.getTopTags(packageConfiguration, repositoryConfiguration, 3, false);
+
+        assertEquals("natural", top.get("order"));
+        assertEquals(10, top.get("tags"));
+        assertEquals(9L, top.get("matching"));
+        List<?> tags = (List<?>) top.get("top");
+        assertEquals(Arrays.asList("1.9", "1.8", "1.7"),
+                tags.stream().map(tag -> ((Map<?, ?>) tag).get("tag")).collect(Collectors.toList()));
+        assertEquals(TagOrder.NATURAL.sortKey("1.9"), ((Map<?, ?>) tags.get(0)).get("sort-key"));
+        assertFalse(((Map<?, ?>) tags.get(0)).containsKey("digest"));
+        assertEquals(Collections.singletonList("GET http://xxx/v2/my_docker/tags/list"), registry.requests);
+
+        tags = (List<?>) poller.getTopTags(packageConfiguration, repositoryConfiguration, 2, true).get("top");
+        assertEquals("sha256:1.9", ((Map<?, ?>) tags.get(0)).get("digest"));
+        assertEquals("sha256:1.8", ((Map<?, ?>) tags.get(1)).get("digest"));
+    }
+
+    @Test
+    void getLatestWithRequiredPlatformsTest() {
+
+        MockPlatformRegistry registry = new MockPlatformRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+        PackageMaterialProperty platforms = new PackageMaterialProperty().withValue("linux/amd64, linux/arm64");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_REQUIRED_PLATFORMS, platforms);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        PackageRevisionMessage first = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals("1.1", first.getRevision());
+        assertEquals("sha256:both", first.getDataFor(Constants.DOCKER_MANIFEST_DIGEST));
+
+        registry.requests.clear();
+        PackageRevisionMessage again = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals("1.1", again.getRevision());
+        assertFalse(registry.requests.stream().anyMatch(request -> request.startsWith("GET http://xxx/v2/my_docker/manifests/")));
+
+        registry.digestOf12 = "sha256:both";
+        PackageRevisionMessage pushed = poller.getLatestRevisionSince(packageConfiguration, repositoryConfiguration, first);
+
+        assertEquals("1.2", pushed.getRevision());
+
+        packageConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_REQUIRED_PLATFORMS, new PackageMaterialProperty().withValue("linux/s390x"));
+        assertNull(poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+    }
+
+    @Test
+    void getLatestAsyncTest() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        HttpTransport slowTransport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        if (url.contains("slow_docker")) {
+                            try {
+                                release.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                        }
+                        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.setContent("{\"tags\":[\"1.2\",\"1.100\",\"1.11\"]}");
+                        return response;
+                    }
+                };
+            }
+        };
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                slowTransport
+        );
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty timeout = new PackageMaterialProperty().withValue("1");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_POLL_TIMEOUT, timeout);
+
+        PackageMaterialProperties fast = new PackageMaterialProperties();
+        fast.addPackageMaterialProperty(Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue("my_docker"));
+        fast.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(""));
+        PackageMaterialProperties slow = new PackageMaterialProperties();
+        slow.addPackageMaterialProperty(Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue("slow_docker"));
+        slow.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(""));
+
+        CompletableFuture<PackageRevisionMessage> slowPoll = poller.getLatestRevisionAsync(slow, repositoryConfiguration);
+        CompletableFuture<PackageRevisionMessage> fastPoll = poller.getLatestRevisionAsync(fast, repositoryConfiguration);
+
+        assertEquals("1.100", fastPoll.get(5, TimeUnit.SECONDS).getRevision());
+        assertFalse(slowPoll.isDone());
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> slowPoll.get(5, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof TimeoutException);
+        assertNull(poller.getLatestRevision(slow, repositoryConfiguration).getRevision());
+        assertTrue(poller.getMetrics().get("xxx", "slow_docker", PollMetrics.Counter.ERRORS) >= 1);
+        release.countDown();
+    }
+
+    @Test
+    void getLatestReusesSelectionForUnchangedTagsTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportTags
+        );
+
+        PackageMaterialProperties streamedRepository = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        streamedRepository.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_CACHE_TTL, new PackageMaterialProperty().withValue("60"));
+
+        PackageMaterialProperties packageConfiguration = imagePackage("my_docker");
+        PackageMaterialProperties otherFilter = imagePackage("my_docker");
+        otherFilter.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue("1$"));
+
+        // Streamed tags are selected from as they are read, so there is nothing to skip.
+        assertEquals("1.100", poller.getLatestRevision(packageConfiguration, streamedRepository).getRevision());
+        assertEquals("1.100", poller.getLatestRevision(packageConfiguration, streamedRepository).getRevision());
+        PollMetrics metrics = poller.getMetrics();
+        assertEquals(0, metrics.get("xxx", "my_docker", PollMetrics.Counter.UNCHANGED_TAGS));
+
+        assertEquals("1.100", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals("1.100", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals("1.11", poller.getLatestRevision(otherFilter, repositoryConfiguration).getRevision());
+
+        // Nothing was remembered from the streamed polls.
+        assertEquals(1, metrics.get("xxx", "my_docker", PollMetrics.Counter.UNCHANGED_TAGS));
+        assertEquals(2, metrics.get("xxx", "my_docker", PollMetrics.Phase.TAG_SELECTION).getCount());
+
+        String repository = "\"repository-configuration\":{\"DOCKER_REGISTRY_URL\":{\"value\":\"http://xxx/v2/\"}},";
+        String json = "{\"packages\":["
+                + "{" + repository + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},\"DOCKER_TAG_FILTER\":{\"value\":\"\"}}},"
+                + "{" + repository + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},\"DOCKER_TAG_FILTER\":{\"value\":\"1$\"}}}"
+                + "]}";
+        LatestPackageRevisionsMessage message = JsonUtil.fromJsonString(json, LatestPackageRevisionsMessage.class);
+
+        List<PackageRevisionMessage> revisions = poller.getLatestRevisions(message.getPackages());
+
+        assertEquals("1.100", revisions.get(0).getRevision());
+        assertEquals("1.11", revisions.get(1).getRevision());
+        assertEquals(3, metrics.get("xxx", "my_docker", PollMetrics.Counter.UNCHANGED_TAGS));
+        assertEquals(2, metrics.get("xxx", "my_docker", PollMetrics.Phase.TAG_SELECTION).getCount());
+    }
+
+    @Test
+    void getLatestSharesCachedTagsTest() {
+
+        MockConditionalRegistry registry = new MockConditionalRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty ttl = new PackageMaterialProperty().withValue("60");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_CACHE_TTL, ttl);
+
+        for (String[] filterAndLatest : new String[][]{{"0$", "1.0"}, {"1$", "1.1"}}) {
+            PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+            PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+            packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+            PackageMaterialProperty filter = new PackageMaterialProperty().withValue(filterAndLatest[0]);
+            packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+            PackageRevisionMessage dockerImage = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+            assertEquals(filterAndLatest[1], dockerImage.getRevision());
+        }
+        assertEquals(Collections.singletonList("GET http://xxx/v2/my_docker/tags/list"), registry.requests);
+
+        PollMetrics metrics = poller.getMetrics();
+        assertEquals(2, metrics.get("xxx", "my_docker", PollMetrics.Counter.POLLS));
+        assertEquals(1, metrics.get("xxx", "my_docker", PollMetrics.Counter.CACHE_MISSES));
+        assertEquals(1, metrics.get("xxx", "my_docker", PollMetrics.Counter.CACHE_HITS));
+        assertEquals(1, metrics.get("xxx", "my_docker", PollMetrics.Phase.ANONYMOUS_GET).getCount());
+        assertEquals(2, metrics.get("xxx", "my_docker", PollMetrics.Phase.TAG_SELECTION).getCount());
+    }
+
+    @Test
+    void getLatestWithTagIndexTest() throws IOException {
+
+        Path directory = Files.createTempDirectory("tagindex");
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        try {
+            System.setProperty(TagIndexStore.INDEX_DIR_PROPERTY, directory.toString());
+            for (int restart = 0; restart < 2; restart++) {
+                PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                        new PackageRepositoryConfigurationProvider(),
+                        new MockConditionalRegistry()
+                );
+                assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+                assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+                // Both tags match on every poll, also when the index only feeds the winner.
+                assertEquals(4, poller.getMetrics().get("xxx", "my_docker", PollMetrics.Counter.MATCHING_TAGS));
+            }
+        } finally {
+            System.clearProperty(TagIndexStore.INDEX_DIR_PROPERTY);
+        }
+
+        Path file = directory.resolve(TagIndexStore.fileName("http://xxx/v2/my_docker/tags/list"));
+        assertEquals(Arrays.asList("+ 1 1.0", "+ 2 1.1", "= 2 1.1 - 2 "), Files.readAllLines(file));
+        Files.delete(file);
+        Files.delete(directory);
+    }
+
+    @Test
+    void getLatestRevisionsTest() {
+
+        MockConditionalRegistry registry = new MockConditionalRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        String repository = "\"repository-configuration\":{\"DOCKER_REGISTRY_URL\":{\"value\":\"http://xxx/v2/\"}},";
+        String json = "{\"packages\":["
+                + "{" + repository + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},\"DOCKER_TAG_FILTER\":{\"value\":\"0$\"}}},"
+                + "{" + repository + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},\"DOCKER_TAG_FILTER\":{\"value\":\"\"}}},"
+                + "{" + repository + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},\"DOCKER_TAG_FILTER\":{\"value\":\"\"}},"
+                + "\"previous-revision\":{\"revision\":\"1.1\",\"timestamp\":\"2017-10-18T12:34:56.789Z\"}},"
+                + "{" + repository + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},\"DOCKER_TAG_FILTER\":{\"value\":\"(\"}}},"
+                + "{" + repository + "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"other\"},\"DOCKER_TAG_FILTER\":{\"value\":\"\"}}}"
+                + "]}";
+        LatestPackageRevisionsMessage message = JsonUtil.fromJsonString(json, LatestPackageRevisionsMessage.class);
+
+        List<PackageRevisionMessage> revisions = poller.getLatestRevisions(message.getPackages());
+
+        assertEquals(5, revisions.size());
+        assertEquals("1.0", revisions.get(0).getRevision());
+        assertEquals("1.1", revisions.get(1).getRevision());
+        assertEquals("1.1", revisions.get(2).getRevision());
+        assertNull(revisions.get(3).getRevision());
+        assertNull(revisions.get(4).getRevision());
+        // Images are polled concurrently, in no particular order.
+        assertEquals(Arrays.asList(
+                "GET http://xxx/v2/my_docker/tags/list",
+                "GET http://xxx/v2/other/tags/list"), registry.requests.stream().sorted().collect(Collectors.toList()));
+        assertEquals(4, poller.getMetrics().get("xxx", "my_docker", PollMetrics.Counter.POLLS));
+        assertEquals(2, poller.getMetrics().get("xxx", "my_docker", PollMetrics.Counter.TAGS));
+    }
+
+    @Test
+    void getLatestRevisionsKeepsRepositoriesApartTest() {
+
+        MockPrivateRegistry registry = new MockPrivateRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        String image = "\"package-configuration\":{\"DOCKER_IMAGE\":{\"value\":\"lib/a\"},\"DOCKER_TAG_FILTER\":{\"value\":\"\"}}";
+        String json = "{\"packages\":["
+                + "{\"repository-configuration\":{\"DOCKER_REGISTRY_URL\":{\"value\":\"http://xxx/v2/\"}}," + image + "},"
+                + "{\"repository-configuration\":{\"DOCKER_REGISTRY_URL\":{\"value\":\"http://xxx/v2/\"},"
+                + "\"DOCKER_USERNAME\":{\"value\":\"ci\"},\"DOCKER_PASSWORD\":{\"value\":\"s3cret\"}}," + image + "}"
+                + "]}";
+        LatestPackageRevisionsMessage message = JsonUtil.fromJsonString(json, LatestPackageRevisionsMessage.class);
+
+        List<PackageRevisionMessage> revisions = poller.getLatestRevisions(message.getPackages());
+
+        // Only the repository with the account gets to see the tags.
+        assertNull(revisions.get(0).getRevision());
+        assertEquals("1.1", revisions.get(1).getRevision());
+    }
+
+    @Test
+    void catalogScanTest() throws InterruptedException {
+
+        MockCatalogRegistry registry = new MockCatalogRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty name = new PackageMaterialProperty().withValue("registry/name");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_NAME, name);
+        PackageMaterialProperty parallelism = new PackageMaterialProperty().withValue("2");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_CATALOG_PARALLELISM, parallelism);
+        PackageMaterialProperty ttl = new PackageMaterialProperty().withValue("60");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_CACHE_TTL, ttl);
+
+        CheckConnectionResultMessage status = poller.checkConnectionToRepository(repositoryConfiguration);
+
+        assertTrue(status.success());
+        assertEquals(2, status.getMessages().size());
+        assertTrue(status.getMessages().get(1).startsWith("Catalog has 3 images with 4 tags, scanned in "));
+        assertTrue(status.getMessages().get(1).endsWith(" ms. Could not get the tags of 1 images."));
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("lib/b");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+        assertEquals(Arrays.asList(
+                "http://xxx/v2/",
+                "http://xxx/v2/_catalog",
+                "http://xxx/v2/_catalog?last=lib/b",
+                "http://xxx/v2/lib/a/tags/list",
+                "http://xxx/v2/lib/b/tags/list",
+                "http://xxx/v2/lib/c/tags/list"), registry.requests.stream().sorted().collect(Collectors.toList()));
+
+        registry.requests.clear();
+        PackageRevisionMessage revision = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        assertEquals("1.1", revision.getRevision());
+        // The poll is answered from the scan, and scans again in the background rather than waiting for it.
+        assertEquals(1, poller.getMetrics().get("xxx", "lib/b", PollMetrics.Counter.CACHE_HITS));
+        assertEquals(0, poller.getMetrics().get("xxx", "lib/b", PollMetrics.Counter.CACHE_MISSES));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!registry.requests.contains("http://xxx/v2/lib/c/tags/list")) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void getLatestServesLastGoodWhileBackingOffTest() {
+
+        List<String> requests = new ArrayList<>();
+        int[] status = {200};
+        HttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        requests.add(url);
+                        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                        response.setStatusCode(status[0]);
+                        if (status[0] == 429) {
+                            response.addHeader("Retry-After", "3600");
+                        } else {
+                            response.setContentType("application/json");
+                            response.setContent("{\"tags\":[\"1.0\",\"1.1\"]}");
+                        }
+                        return response;
+                    }
+                };
+            }
+        };
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                transport
+        );
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://throttled/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        status[0] = 429;
+        assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals(2, requests.size());
+
+        filter.withValue("0$");
+        assertNull(poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    void getLatestAfterWebhookTest() {
+
+        MockConditionalRegistry registry = new MockConditionalRegistry();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                registry
+        );
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty ttl = new PackageMaterialProperty().withValue("3600");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_CACHE_TTL, ttl);
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+
+        poller.onTagEvent(new TagEvent("xxx", "my_docker", "1.2", "sha256:1234", false));
+        poller.onTagEvent(new TagEvent(null, "other_docker", "1.4", "sha256:9abc", false));
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+
+        poller.onTagEvent(new TagEvent(null, "my_docker", "1.2", "sha256:1234", true));
+        assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+
+        assertEquals(Collections.singletonList("GET http://xxx/v2/my_docker/tags/list"), registry.requests);
+    }
+
     @Test
     void expandNumsTest() {
         String expected = "000123.000001-X";
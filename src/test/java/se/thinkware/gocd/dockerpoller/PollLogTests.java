@@ -0,0 +1,91 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollLogTests {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    private PollLog log(PollLog.Level level) {
+        return new PollLog(Logger.getLoggerFor(PollLogTests.class), level, now::get);
+    }
+
+    @Test
+    void lazyMessagesTest() {
+        PollLog log = log(PollLog.Level.INFO);
+        AtomicInteger built = new AtomicInteger();
+
+        log.debug(() -> "tags: " + built.incrementAndGet());
+        assertEquals(0, built.get());
+
+        log.info(() -> "tags: " + built.incrementAndGet());
+        log.warn(() -> "tags: " + built.incrementAndGet());
+        assertEquals(2, built.get());
+    }
+
+    @Test
+    void levelTest() {
+        PollLog log = log(PollLog.Level.WARN);
+        assertFalse(log.isEnabled(PollLog.Level.DEBUG));
+        assertFalse(log.isEnabled(PollLog.Level.INFO));
+        assertTrue(log.isEnabled(PollLog.Level.WARN));
+        assertTrue(log.isEnabled(PollLog.Level.ERROR));
+    }
+
+    @Test
+    void configuredLevelTest() {
+        try {
+            System.setProperty(PollLog.LEVEL_PROPERTY, "debug");
+            assertEquals(PollLog.Level.DEBUG, PollLog.configuredLevel());
+            System.setProperty(PollLog.LEVEL_PROPERTY, "chatty");
+            assertEquals(PollLog.Level.INFO, PollLog.configuredLevel());
+        } finally {
+            System.clearProperty(PollLog.LEVEL_PROPERTY);
+        }
+        assertEquals(PollLog.Level.INFO, PollLog.configuredLevel());
+    }
+
+    @Test
+    void warnLimitedTest() {
+        PollLog log = log(PollLog.Level.INFO);
+
+        assertTrue(log.warnLimited("alpine", () -> "down"));
+        now.set(PollLog.WARNING_INTERVAL_MILLIS - 1);
+        assertFalse(log.warnLimited("alpine", () -> "down"));
+        assertTrue(log.warnLimited("busybox", () -> "down"));
+
+        now.set(PollLog.WARNING_INTERVAL_MILLIS);
+        assertTrue(log.warnLimited("alpine", () -> "down"));
+        assertFalse(log.warnLimited("alpine", () -> "down"));
+
+        log.recovered("alpine");
+        assertTrue(log.warnLimited("alpine", () -> "down"));
+    }
+
+    @Test
+    void warnLimitedForgetsTest() {
+        PollLog log = log(PollLog.Level.INFO);
+        for (int i = 0; i < 100; i++) {
+            log.warnLimited("image@sha256:" + i, () -> "no manifest");
+        }
+        assertEquals(100, log.limitedWarnings());
+
+        now.set(PollLog.WARNING_INTERVAL_MILLIS);
+        assertTrue(log.warnLimited("alpine", () -> "down"));
+        assertEquals(1, log.limitedWarnings());
+    }
+
+    @Test
+    void warnLimitedDisabledTest() {
+        PollLog log = log(PollLog.Level.ERROR);
+        AtomicInteger built = new AtomicInteger();
+        assertFalse(log.warnLimited("alpine", () -> "down " + built.incrementAndGet()));
+        assertEquals(0, built.get());
+    }
+}
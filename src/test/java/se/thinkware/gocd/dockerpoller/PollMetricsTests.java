@@ -0,0 +1,88 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.GenericUrl;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollMetricsTests {
+
+    @Test
+    void labelsFromUrlTest() {
+        GenericUrl url = new GenericUrl("https://registry.example.com:5000/v2/library/alpine/tags/list?n=100");
+        assertEquals("registry.example.com:5000", PollMetrics.registryOf(url));
+        assertEquals("library/alpine", PollMetrics.imageOf(url));
+        assertEquals("alpine", PollMetrics.imageOf(new GenericUrl("http://xxx/v2/alpine/manifests/3.6")));
+        assertEquals("xxx", PollMetrics.registryOf(new GenericUrl("http://xxx/v2/")));
+        assertEquals("", PollMetrics.imageOf(new GenericUrl("http://xxx/v2/")));
+    }
+
+    @Test
+    void histogramBucketsTest() {
+        PollMetrics metrics = new PollMetrics();
+        metrics.record("xxx", "alpine", PollMetrics.Phase.AUTHENTICATED_GET, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.record("xxx", "alpine", PollMetrics.Phase.AUTHENTICATED_GET, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.record("xxx", "alpine", PollMetrics.Phase.AUTHENTICATED_GET, TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.record("xxx", "alpine", PollMetrics.Phase.AUTHENTICATED_GET, TimeUnit.SECONDS.toNanos(60));
+
+        PollMetrics.Histogram histogram = metrics.get("xxx", "alpine", PollMetrics.Phase.AUTHENTICATED_GET);
+        long[] buckets = histogram.getCumulativeBuckets();
+        assertEquals(4, histogram.getCount());
+        assertEquals(2, buckets[0]);
+        assertEquals(2, buckets[2]);
+        assertEquals(3, buckets[3]);
+        assertEquals(3, buckets[PollMetrics.BUCKETS.length - 1]);
+        assertEquals(4, buckets[PollMetrics.BUCKETS.length]);
+        assertEquals(60.048, histogram.getSumSeconds(), 1e-9);
+        assertNull(metrics.get("xxx", "alpine", PollMetrics.Phase.TOKEN_FETCH));
+    }
+
+    @Test
+    void prometheusTest() throws IOException {
+        PollMetrics metrics = new PollMetrics();
+        metrics.record("xxx", "alpine", PollMetrics.Phase.JSON_PARSE, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.count("xxx", "alpine", PollMetrics.Counter.TAGS, 42);
+        metrics.count("xxx", "alpine", PollMetrics.Counter.TAGS, 8);
+
+        StringWriter out = new StringWriter();
+        metrics.writePrometheus(out);
+        String text = out.toString();
+        assertTrue(text.contains("dockerpoller_request_duration_seconds_bucket{registry=\"xxx\",image=\"alpine\",phase=\"json_parse\",le=\"0.01\"} 0\n"));
+        assertTrue(text.contains("dockerpoller_request_duration_seconds_bucket{registry=\"xxx\",image=\"alpine\",phase=\"json_parse\",le=\"0.025\"} 1\n"));
+        assertTrue(text.contains("dockerpoller_request_duration_seconds_count{registry=\"xxx\",image=\"alpine\",phase=\"json_parse\"} 1\n"));
+        assertTrue(text.contains("dockerpoller_tags_total{registry=\"xxx\",image=\"alpine\"} 50\n"));
+    }
+
+    @Test
+    void exportTest() throws IOException {
+        PollMetrics metrics = new PollMetrics();
+        metrics.count("xxx", "alpine", PollMetrics.Counter.ERRORS, 1);
+        Path directory = Files.createTempDirectory("metrics");
+        Path file = directory.resolve("dockerpoller.prom");
+        metrics.export(file);
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(text.contains("dockerpoller_errors_total{registry=\"xxx\",image=\"alpine\"} 1\n"));
+        Files.delete(file);
+        Files.delete(directory);
+    }
+
+    @Test
+    void toMapTest() {
+        PollMetrics metrics = new PollMetrics();
+        metrics.count("xxx", "alpine", PollMetrics.Counter.POLLS, 3);
+        Map<String, Object> map = metrics.toMap();
+        List<?> counters = (List<?>) map.get("counters");
+        assertEquals(1, counters.size());
+        assertEquals("{\"latencies\":[],\"counters\":[{\"registry\":\"xxx\",\"image\":\"alpine\",\"counter\":\"polls\",\"value\":3}]}",
+                JsonUtil.toJsonString(map));
+    }
+}
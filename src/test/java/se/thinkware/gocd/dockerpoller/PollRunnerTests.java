@@ -0,0 +1,128 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollRunnerTests {
+
+    private final PollRunner runner = new PollRunner(2);
+
+    @Test
+    void completesTest() throws Exception {
+        assertEquals("1.1", runner.submit(() -> "1.1", 0).get(5, TimeUnit.SECONDS));
+        assertEquals("1.2", runner.submit(() -> "1.2", 5000).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failureTest() {
+        CompletableFuture<String> poll = runner.submit(() -> {
+            throw new IOException("unreachable");
+        }, 0);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> poll.get(5, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof IOException);
+    }
+
+    @Test
+    void deadlineInterruptsPollTest() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> poll = runner.submit(() -> {
+            try {
+                Thread.sleep(10000);
+                return "too late";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        }, 50);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> poll.get(5, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof TimeoutException);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelInterruptsPollTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> poll = runner.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+                return "too late";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        }, 0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        poll.cancel(true);
+
+        assertThrows(CancellationException.class, poll::join);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void pollsRunConcurrentlyTest() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        CompletableFuture<Boolean> first = runner.submit(() -> {
+            bothRunning.countDown();
+            return bothRunning.await(5, TimeUnit.SECONDS);
+        }, 0);
+        CompletableFuture<Boolean> second = runner.submit(() -> {
+            bothRunning.countDown();
+            return bothRunning.await(5, TimeUnit.SECONDS);
+        }, 0);
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deadlineStartsWhenPollRunsTest() throws Exception {
+        PollRunner single = new PollRunner(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Boolean> busy = single.submit(() -> release.await(5, TimeUnit.SECONDS), 0);
+            CompletableFuture<String> queued = single.submit(() -> "1.1", 50);
+            Thread.sleep(200);
+            release.countDown();
+
+            assertTrue(busy.get(5, TimeUnit.SECONDS));
+            assertEquals("1.1", queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    void runsOnCallerTest() throws Exception {
+        Thread caller = Thread.currentThread();
+        assertSame(caller, runner.run(Thread::currentThread, 0));
+        assertSame(caller, runner.run(Thread::currentThread, 5000));
+    }
+
+    @Test
+    void runDeadlineInterruptsPollTest() {
+        assertThrows(TimeoutException.class, () -> runner.run(() -> {
+            try {
+                Thread.sleep(10000);
+                return "too late";
+            } catch (InterruptedException e) {
+                return "interrupted";
+            }
+        }, 50));
+        // The interrupt was for the poll alone.
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
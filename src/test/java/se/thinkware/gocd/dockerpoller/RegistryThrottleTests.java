@@ -0,0 +1,148 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistryThrottleTests {
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final List<Long> sleeps = new ArrayList<>();
+
+    private RegistryThrottle throttle() {
+        return new RegistryThrottle("xxx", now::get, millis -> {
+            sleeps.add(millis);
+            now.addAndGet(millis);
+        });
+    }
+
+    @Test
+    void noLimitTest() throws IOException {
+        RegistryThrottle throttle = throttle();
+        for (int i = 0; i < 1000; i++) {
+            throttle.acquire();
+        }
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    void tokenBucketTest() throws IOException {
+        RegistryThrottle throttle = throttle();
+        throttle.setRequestsPerMinute(60);
+        // A burst of ten seconds' worth, then one per second.
+        for (int i = 0; i < 10; i++) {
+            throttle.acquire();
+        }
+        assertTrue(sleeps.isEmpty());
+        throttle.acquire();
+        throttle.acquire();
+        assertEquals(Arrays.asList(1000L, 1000L), sleeps);
+    }
+
+    @Test
+    void tooLongWaitTest() throws IOException {
+        RegistryThrottle throttle = new RegistryThrottle("xxx", now::get, millis -> fail("Should not wait"));
+        throttle.setRequestsPerMinute(6);
+        throttle.acquire();
+        assertThrows(RegistryThrottle.BackoffException.class, throttle::acquire);
+        now.addAndGet(10000);
+        throttle.acquire();
+    }
+
+    @Test
+    void strictestLimitTest() throws IOException {
+        RegistryThrottle throttle = throttle();
+        throttle.setRequestsPerMinute(60);
+        throttle.acquire();
+        // Polls of repositories with other limits, or none, take turns.
+        for (int i = 0; i < 10; i++) {
+            throttle.setRequestsPerMinute(600);
+            throttle.setRequestsPerMinute(0);
+            throttle.setRequestsPerMinute(60);
+        }
+        for (int i = 0; i < 9; i++) {
+            throttle.acquire();
+        }
+        assertTrue(sleeps.isEmpty());
+        throttle.acquire();
+        assertEquals(Arrays.asList(1000L), sleeps);
+
+        // Until the strictest one hasn't been set for a while. The bucket keeps what it had.
+        now.addAndGet(RegistryThrottle.LIMIT_MEMORY_MILLIS + 1);
+        throttle.setRequestsPerMinute(600);
+        for (int i = 0; i < 10; i++) {
+            throttle.acquire();
+        }
+        throttle.acquire();
+        assertEquals(Arrays.asList(1000L, 100L), sleeps);
+    }
+
+    @Test
+    void serverErrorsTest() throws IOException {
+        RegistryThrottle throttle = throttle();
+        throttle.record(500, null);
+        throttle.record(500, null);
+        throttle.record(200, null);
+        throttle.record(500, null);
+        throttle.acquire();
+        assertEquals(0, throttle.getBackoffUntil());
+        // Unless the registry says how long to wait.
+        throttle.record(503, "30");
+        assertEquals(now.get() + 30000, throttle.getBackoffUntil());
+    }
+
+    @Test
+    void exponentialBackoffTest() throws IOException {
+        RegistryThrottle throttle = throttle();
+        for (int i = 0; i < RegistryThrottle.SERVER_ERRORS_BEFORE_BACKOFF; i++) {
+            throttle.acquire();
+            throttle.record(503, null);
+        }
+        assertEquals(now.get() + RegistryThrottle.MIN_BACKOFF_MILLIS, throttle.getBackoffUntil());
+        assertThrows(RegistryThrottle.BackoffException.class, throttle::acquire);
+
+        now.set(throttle.getBackoffUntil());
+        throttle.acquire();
+        throttle.record(502, null);
+        assertEquals(now.get() + 2 * RegistryThrottle.MIN_BACKOFF_MILLIS, throttle.getBackoffUntil());
+
+        for (int i = 0; i < 30; i++) {
+            throttle.record(500, null);
+        }
+        assertEquals(now.get() + RegistryThrottle.MAX_BACKOFF_MILLIS, throttle.getBackoffUntil());
+
+        now.set(throttle.getBackoffUntil());
+        throttle.record(200, null);
+        throttle.record(429, null);
+        assertEquals(now.get() + RegistryThrottle.MIN_BACKOFF_MILLIS, throttle.getBackoffUntil());
+    }
+
+    @Test
+    void retryAfterTest() {
+        RegistryThrottle throttle = throttle();
+        throttle.record(429, "120");
+        assertEquals(now.get() + 120000, throttle.getBackoffUntil());
+
+        assertEquals(30000, RegistryThrottle.retryAfterMillis("Wed, 21 Oct 2015 07:28:30 GMT", 1445412480000L));
+        assertEquals(0, RegistryThrottle.retryAfterMillis("Wed, 21 Oct 2015 07:28:00 GMT", 1445412510000L));
+        assertEquals(RegistryThrottle.MAX_RETRY_AFTER_MILLIS, RegistryThrottle.retryAfterMillis("86400", 0));
+        assertEquals(-1, RegistryThrottle.retryAfterMillis("soon", 0));
+        assertEquals(-1, RegistryThrottle.retryAfterMillis(null, 0));
+    }
+
+    @Test
+    void isThrottlingTest() {
+        assertTrue(RegistryThrottle.isThrottling(new RegistryThrottle.BackoffException("later")));
+        assertTrue(RegistryThrottle.isThrottling(new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders()).build()));
+        assertFalse(RegistryThrottle.isThrottling(new HttpResponseException.Builder(404, "Not Found", new HttpHeaders()).build()));
+        assertFalse(RegistryThrottle.isThrottling(new IOException("Connection refused")));
+    }
+}
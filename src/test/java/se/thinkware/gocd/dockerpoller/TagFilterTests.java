@@ -0,0 +1,55 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagFilterTests {
+
+    private static final List<String> TAGS = Arrays.asList(
+            "", "1", "1.0", "1.0.1", "1.10.0-rc1", "latest", "build-123", "1.0-alpine", "alpine", "a$b", "x|y", "10");
+
+    private static final List<String> FILTERS = Arrays.asList(
+            ".*", "^", "$", "^$", "1", "^1", "1$", "^1$", "^1\\.0", "\\.0$", "^1\\.0\\.1$",
+            "alpine|rc", "latest|^build", "a\\$b", "x\\|y", "[0-9]+$", "^\\d", "rc[0-9]", "\\\\$");
+
+    @Test
+    void sameAsRegexTest() {
+        for (String filter : FILTERS) {
+            TagFilter tagFilter = TagFilter.compile(filter);
+            Pattern pattern = Pattern.compile(filter);
+            for (String tag : TAGS) {
+                assertEquals(pattern.matcher(tag).find(), tagFilter.test(tag), filter + " on " + tag);
+            }
+        }
+    }
+
+    @Test
+    void emptyFilterMatchesAllTest() {
+        for (String tag : TAGS) {
+            assertTrue(TagFilter.compile("").test(tag));
+        }
+    }
+
+    @Test
+    void cachedTest() {
+        assertSame(TagFilter.compile("^1\\.0"), TagFilter.compile("^1\\.0"));
+    }
+
+    @Test
+    void invalidFilterTest() {
+        assertThrows(PatternSyntaxException.class, () -> TagFilter.compile("*.starDotIsAnInvalidFilter"));
+    }
+
+    @Test
+    void literalTest() {
+        assertEquals("1.0", TagFilter.literal("1\\.0"));
+        assertNull(TagFilter.literal("1.0"));
+        assertNull(TagFilter.literal("\\d"));
+    }
+}
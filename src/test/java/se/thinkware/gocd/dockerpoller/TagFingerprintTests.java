@@ -0,0 +1,62 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagFingerprintTests {
+
+    private static TagFingerprint of(String... tags) {
+        TagFingerprint fingerprint = new TagFingerprint();
+        Arrays.asList(tags).forEach(fingerprint);
+        return fingerprint;
+    }
+
+    @Test
+    void sameTagsTest() {
+        assertEquals(of("1.0", "1.1"), of("1.0", "1.1"));
+        assertEquals(of("1.0", "1.1").hashCode(), of("1.0", "1.1").hashCode());
+        assertEquals(2, of("1.0", "1.1").getCount());
+        assertEquals(of(), new TagFingerprint());
+    }
+
+    @Test
+    void changedTagsTest() {
+        assertNotEquals(of("1.0", "1.1"), of("1.0", "1.2"));
+        assertNotEquals(of("1.0", "1.1"), of("1.0", "1.1", "1.2"));
+        assertNotEquals(of("1.0", "1.1"), of("1.1", "1.0"));
+        assertNotEquals(of("ab"), of("a", "b"));
+        assertNotEquals(of("a", ""), of("a"));
+        assertNotEquals(of("\u0101"), of("\u0100"));
+    }
+
+    @Test
+    void tagListTest() {
+        TagList tags = new TagList(Arrays.asList("1.0", "1.1"), null, 0);
+
+        assertEquals(of("1.0", "1.1"), tags.fingerprint());
+        assertSame(tags.fingerprint(), tags.fingerprint());
+        assertEquals(of("1.0", "1.1", "1.2"), tags.with("1.2").fingerprint());
+    }
+
+    @Test
+    void memoTest() {
+        SelectionMemo memo = new SelectionMemo();
+        LatestTagSelector selector = new LatestTagSelector(tag -> true);
+        String key = SelectionMemo.keyOf("1$", TagOrder.NATURAL, 1);
+
+        memo.put("image", of("1.0", "1.1"), key, selector);
+
+        assertSame(selector, memo.get("image", of("1.0", "1.1"), key));
+        assertNull(memo.get("image", of("1.0", "1.1"), SelectionMemo.keyOf("1$", TagOrder.NATURAL, 8)));
+        assertNull(memo.get("image", of("1.0", "1.1"), SelectionMemo.keyOf("1$", TagOrder.SEMVER, 1)));
+        assertNull(memo.get("image", of("1.0", "1.1", "1.2"), key));
+        assertNull(memo.get("other", of("1.0", "1.1"), key));
+
+        memo.put("image", of("1.0", "1.1", "1.2"), SelectionMemo.keyOf(null, TagOrder.NATURAL, 1), selector);
+        assertNull(memo.get("image", of("1.0", "1.1"), key));
+        assertSame(selector, memo.get("image", of("1.0", "1.1", "1.2"), SelectionMemo.keyOf("", TagOrder.NATURAL, 1)));
+    }
+}
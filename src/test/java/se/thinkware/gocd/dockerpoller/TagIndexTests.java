@@ -0,0 +1,207 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagIndexTests {
+
+    private Path directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("tagindex");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private int matching;
+
+    // Polls the index with the given tags, and returns the tags the filter had to look at.
+    private List<String> poll(TagIndex index, String filter, String... tags) {
+        TagIndex.Update update = index.update();
+        Arrays.asList(tags).forEach(update);
+        update.commit();
+        List<String> seen = new ArrayList<>();
+        LatestTagSelector selector = new LatestTagSelector(TagFilter.compile(filter)) {
+            @Override
+            public void accept(String tag) {
+                seen.add(tag);
+                super.accept(tag);
+            }
+        };
+        update.select(filter, selector);
+        matching = selector.getMatching();
+        if (selector.getLatest() != null) {
+            update.setWinner(filter, selector.getLatest(), null, matching);
+        }
+        return seen;
+    }
+
+    @Test
+    void deltaTest() {
+        TagIndex index = TagIndex.load(directory.resolve("alpine.log"));
+
+        assertEquals(Arrays.asList("1.0", "1.1"), poll(index, "", "1.0", "1.1"));
+        assertEquals("1.1", index.getWinner("").getTag());
+
+        assertEquals(Arrays.asList("1.1", "1.2"), poll(index, "", "1.0", "1.1", "1.2"));
+        assertEquals("1.2", index.getWinner("").getTag());
+
+        assertEquals(Arrays.asList("1.2"), poll(index, "", "1.0", "1.1", "1.2"));
+    }
+
+    @Test
+    void matchingCountsAllTagsTest() {
+        TagIndex index = TagIndex.load(directory.resolve("alpine.log"));
+        poll(index, "^1", "1.0", "1.1", "2.0");
+        assertEquals(2, matching);
+
+        assertEquals(Arrays.asList("1.1", "1.2", "2.1"), poll(index, "^1", "1.0", "1.1", "1.2", "2.0", "2.1"));
+        assertEquals(3, matching);
+        assertEquals(3, index.getWinner("^1").getMatching());
+
+        assertEquals(Arrays.asList("1.2"), poll(index, "^1", "1.0", "1.1", "1.2", "2.0", "2.1"));
+        assertEquals(3, matching);
+
+        // A removal can't be subtracted without knowing what matched, so it takes a full pass.
+        assertEquals(Arrays.asList("1.1", "1.2", "2.0", "2.1"), poll(index, "^1", "1.1", "1.2", "2.0", "2.1"));
+        assertEquals(2, matching);
+        assertEquals(Arrays.asList("1.2"), poll(index, "^1", "1.1", "1.2", "2.0", "2.1"));
+        assertEquals(2, matching);
+    }
+
+    @Test
+    void runnersUpSeeAllTagsTest() {
+        TagIndex index = TagIndex.load(directory.resolve("alpine.log"));
+        poll(index, "", "1.0", "1.1");
+        TagIndex.Update update = index.update();
+        Arrays.asList("1.0", "1.1", "1.2").forEach(update);
+        update.commit();
+        LatestTagSelector selector = new LatestTagSelector(TagFilter.compile(""), 2);
+
+        assertEquals(3, update.select("", selector));
+        assertEquals(Arrays.asList("1.2", "1.1"), selector.getCandidates());
+        assertEquals(3, selector.getMatching());
+    }
+
+    @Test
+    void borrowedTagsTest() {
+        TagIndex index = TagIndex.load(directory.resolve("alpine.log"));
+        TagIndex.Update update = index.update();
+        update.acceptAll(Collections.unmodifiableList(Arrays.asList("1.0", "1.1")));
+        update.accept("1.2");
+        update.commit();
+        assertEquals(3, update.size());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void filtersSeeTagsAddedForOtherFiltersTest() {
+        TagIndex index = TagIndex.load(directory.resolve("alpine.log"));
+        poll(index, "^1", "1.0", "2.0");
+        poll(index, "^2", "1.0", "2.0");
+
+        poll(index, "^2", "1.0", "1.1", "2.0", "2.1");
+        assertEquals("2.1", index.getWinner("^2").getTag());
+
+        assertEquals(Arrays.asList("1.0", "1.1", "2.1"), poll(index, "^1", "1.0", "1.1", "2.0", "2.1"));
+        assertEquals("1.1", index.getWinner("^1").getTag());
+    }
+
+    @Test
+    void removedWinnerTest() {
+        TagIndex index = TagIndex.load(directory.resolve("alpine.log"));
+        poll(index, "", "1.0", "1.1", "1.2");
+
+        assertEquals(Arrays.asList("1.0", "1.1"), poll(index, "", "1.0", "1.1"));
+        assertEquals("1.1", index.getWinner("").getTag());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void reloadTest() {
+        Path file = directory.resolve("alpine.log");
+        TagIndex index = TagIndex.load(file);
+        poll(index, "", "1.0", "1.1");
+        TagIndex.Update update = index.update();
+        Arrays.asList("1.0", "1.1").forEach(update);
+        update.commit();
+        update.setWinner("", "1.1", "sha256:abc", 2);
+
+        TagIndex reloaded = TagIndex.load(file);
+        assertEquals(2, reloaded.size());
+        assertEquals("1.1", reloaded.getWinner("").getTag());
+        assertEquals("sha256:abc", reloaded.getWinner("").getDigest());
+        assertEquals(2, reloaded.getWinner("").getMatching());
+        assertEquals(Arrays.asList("1.1", "1.2"), poll(reloaded, "", "1.0", "1.1", "1.2"));
+        assertEquals(3, matching);
+    }
+
+    @Test
+    void compactionTest() throws IOException {
+        Path file = directory.resolve("alpine.log");
+        TagIndex index = TagIndex.load(file);
+        for (int i = 0; i < TagIndex.MIN_COMPACTION_LINES; i++) {
+            poll(index, "", "1.0", "1." + (i + 1));
+        }
+        assertTrue(Files.readAllLines(file).size() < TagIndex.MIN_COMPACTION_LINES);
+
+        TagIndex reloaded = TagIndex.load(file);
+        assertEquals(2, reloaded.size());
+        assertEquals("1." + TagIndex.MIN_COMPACTION_LINES, reloaded.getWinner("").getTag());
+        // Sequence numbers keep growing, so a new tag is still seen as new.
+        assertEquals(Arrays.asList("1." + TagIndex.MIN_COMPACTION_LINES, "1.0.1"),
+                poll(reloaded, "", "1.0", "1." + TagIndex.MIN_COMPACTION_LINES, "1.0.1"));
+        assertEquals(3, matching);
+    }
+
+    @Test
+    void interruptedPollStillWritesTest() throws IOException {
+        Path file = directory.resolve("alpine.log");
+        TagIndex index = TagIndex.load(file);
+        Thread.currentThread().interrupt();
+        try {
+            poll(index, "", "1.0", "1.1");
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(Arrays.asList("+ 1 1.0", "+ 2 1.1", "= 2 1.1 - 2 "), Files.readAllLines(file));
+    }
+
+    @Test
+    void brokenLineTest() throws IOException {
+        Path file = directory.resolve("alpine.log");
+        Files.write(file, Arrays.asList("+ 1 1.0", "+ 2 1.1", "= 2 1.1 - 2 ", "+ x", "= 2 1.1 - ^1"));
+        TagIndex index = TagIndex.load(file);
+        assertEquals(2, index.size());
+        assertEquals("1.1", index.getWinner("").getTag());
+        // A winner without a match count can't be built on.
+        assertNull(index.getWinner("^1"));
+    }
+
+    @Test
+    void fileNameTest() {
+        String name = TagIndexStore.fileName("http://registry:5000/v2/library/alpine/tags/list");
+        assertTrue(name.startsWith("registry_5000_v2_library_alpine_tags_list-"));
+        assertTrue(name.endsWith(".log"));
+        assertNotEquals(name, TagIndexStore.fileName("http://registry:5000/v2/library/alpine/tags/list?"));
+    }
+}
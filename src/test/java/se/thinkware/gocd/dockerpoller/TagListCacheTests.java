@@ -0,0 +1,113 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagListCacheTests {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    private TagList tags(String... tags) {
+        return new TagList(Arrays.asList(tags), null, now.get());
+    }
+
+    @Test
+    void ttlTest() throws IOException {
+        TagListCache cache = new TagListCache(10, now::get);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("image", 1000, () -> { loads.incrementAndGet(); return tags("1.0"); });
+        now.set(999);
+        cache.get("image", 1000, () -> { loads.incrementAndGet(); return tags("1.0"); });
+        assertEquals(1, loads.get());
+
+        now.set(1000);
+        cache.get("image", 1000, () -> { loads.incrementAndGet(); return tags("1.0"); });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void leastRecentlyUsedTest() throws IOException {
+        TagListCache cache = new TagListCache(2, now::get);
+
+        cache.get("a", 1000, () -> tags("1"));
+        cache.get("b", 1000, () -> tags("2"));
+        cache.get("a", 1000, () -> tags("1"));
+        cache.get("c", 1000, () -> tags("3"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.getIfFresh("a", 1000));
+        assertNull(cache.getIfFresh("b", 1000));
+        assertNotNull(cache.getIfFresh("c", 1000));
+    }
+
+    @Test
+    void offerNeverEvictsTest() throws IOException {
+        TagListCache cache = new TagListCache(2, now::get);
+
+        cache.get("a", 1000, () -> tags("1"));
+        assertTrue(cache.offer("b", tags("2")));
+        assertFalse(cache.offer("c", tags("3")));
+        assertTrue(cache.offer("a", tags("1", "2")));
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getIfFresh("a", 1000).size());
+        assertNotNull(cache.getIfFresh("b", 1000));
+        assertNull(cache.getIfFresh("c", 1000));
+    }
+
+    @Test
+    void concurrentCallersShareOneFetchTest() throws Exception {
+        TagListCache cache = new TagListCache(10, now::get);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TagListCache.Loader slowLoader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new TagList(Collections.singletonList("1.0"), null, now.get());
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<TagList> first = executor.submit(() -> cache.get("image", 1000, slowLoader));
+            loading.await(5, TimeUnit.SECONDS);
+            Future<TagList> second = executor.submit(() -> cache.get("image", 1000, slowLoader));
+            Future<TagList> third = executor.submit(() -> cache.get("image", 1000, slowLoader));
+            release.countDown();
+
+            assertSame(first.get(), second.get());
+            assertSame(first.get(), third.get());
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedFetchIsNotCachedTest() {
+        TagListCache cache = new TagListCache(10, now::get);
+
+        assertThrows(IOException.class, () -> cache.get("image", 1000, () -> {
+            throw new IOException("404");
+        }));
+        assertEquals(0, cache.size());
+    }
+}
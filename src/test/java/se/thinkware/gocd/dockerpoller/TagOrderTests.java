@@ -0,0 +1,103 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagOrderTests {
+
+    private static List<String> sorted(TagOrder order, String... tags) {
+        return Arrays.stream(tags).sorted(order::compare).collect(Collectors.toList());
+    }
+
+    @Test
+    void naturalKeysSameOrderAsComparatorTest() {
+        Random random = new Random(4711);
+        String alphabet = ".-_a0123456789";
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder first = new StringBuilder();
+            StringBuilder second = new StringBuilder();
+            for (int j = random.nextInt(10); j > 0; j--) {
+                first.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                second.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertEquals(
+                    Integer.signum(TagVersionComparator.INSTANCE.compare(first.toString(), second.toString())),
+                    Integer.signum(TagOrder.NATURAL.sortKey(first.toString()).compareTo(TagOrder.NATURAL.sortKey(second.toString()))),
+                    first + " <> " + second);
+        }
+    }
+
+    @Test
+    void semverTest() {
+        // The precedence example of the Semantic Versioning 2.0 spec.
+        assertEquals(
+                Arrays.asList("1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta", "1.0.0-beta",
+                        "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0"),
+                sorted(TagOrder.SEMVER, "1.0.0", "1.0.0-rc.1", "1.0.0-beta.11", "1.0.0-beta.2",
+                        "1.0.0-beta", "1.0.0-alpha.beta", "1.0.0-alpha.1", "1.0.0-alpha"));
+        assertEquals(
+                Arrays.asList("latest", "1.9.0", "1.10.0-rc1", "v1.10.0", "1.10.1"),
+                sorted(TagOrder.SEMVER, "1.10.1", "v1.10.0", "1.10.0-rc1", "latest", "1.9.0"));
+        assertEquals(0, TagOrder.SEMVER.compare("1.2.3+build.5", "1.2.3"));
+        assertTrue(TagOrder.NATURAL.compare("1.10.0-rc1", "1.10.0") > 0);
+    }
+
+    @Test
+    void lexicalTest() {
+        assertEquals(Arrays.asList("1.10", "1.9", "a"), sorted(TagOrder.LEXICAL, "a", "1.9", "1.10"));
+        assertEquals(Arrays.asList("1.9", "1.10", "a"), sorted(TagOrder.NATURAL, "a", "1.9", "1.10"));
+    }
+
+    @Test
+    void selectorTest() {
+        LatestTagSelector selector = new LatestTagSelector(tag -> true, TagOrder.SEMVER, 2);
+        Arrays.asList("2.0.0-rc.1", "1.4.0", "2.0.0-beta", "junk").forEach(selector);
+
+        assertEquals("2.0.0-rc.1", selector.getLatest());
+        assertEquals(Arrays.asList("2.0.0-rc.1", "2.0.0-beta"), selector.getCandidates());
+        assertTrue(TagOrder.SEMVER.isNewer("2.0.0-beta", "2.0.0-rc.1"));
+        assertFalse(TagOrder.SEMVER.isNewer("2.0.0", "2.0.0-rc.1"));
+        assertTrue(TagOrder.PUSHED.isNewer("2.0.0", "1.4.0"));
+        assertFalse(TagOrder.PUSHED.isNewer("1.4.0", "1.4.0"));
+    }
+
+    @Test
+    void parallelSelectionTest() {
+        Random random = new Random(42);
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String patch = random.nextBoolean() ? "0" + random.nextInt(10) : String.valueOf(random.nextInt(10));
+            tags.add(random.nextInt(3) + "." + random.nextInt(20) + "." + patch + (random.nextInt(4) == 0 ? "-rc." + random.nextInt(3) : ""));
+        }
+        for (TagOrder order : Arrays.asList(TagOrder.NATURAL, TagOrder.SEMVER)) {
+            LatestTagSelector serial = new LatestTagSelector(TagFilter.compile("^1\\."), order, 8);
+            LatestTagSelector all = new LatestTagSelector(TagFilter.compile(""), order, 1);
+            LatestTagSelector.selectAll(tags, serial, all);
+            LatestTagSelector parallel = new LatestTagSelector(TagFilter.compile("^1\\."), order, 8);
+            LatestTagSelector parallelAll = new LatestTagSelector(TagFilter.compile(""), order, 1);
+            LatestTagSelector.selectAll(tags, 1000, parallel, parallelAll);
+
+            assertEquals(serial.getLatest(), parallel.getLatest());
+            assertEquals(serial.getCandidates(), parallel.getCandidates());
+            assertEquals(serial.getMatching(), parallel.getMatching());
+            assertEquals(all.getLatest(), parallelAll.getLatest());
+            assertEquals(tags.size(), parallelAll.getMatching());
+        }
+    }
+
+    @Test
+    void ofTest() {
+        assertEquals(TagOrder.NATURAL, TagOrder.of(null));
+        assertEquals(TagOrder.NATURAL, TagOrder.of(" "));
+        assertEquals(TagOrder.SEMVER, TagOrder.of("SemVer"));
+        assertEquals(TagOrder.PUSHED, TagOrder.of(" pushed "));
+        assertThrows(IllegalArgumentException.class, () -> TagOrder.of("newest"));
+    }
+}
@@ -0,0 +1,122 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagPrefetcherTests {
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void jitterTest() {
+        assertEquals(900, TagPrefetcher.jittered(1000, 0));
+        assertEquals(1000, TagPrefetcher.jittered(1000, 0.5));
+        assertEquals(1099, TagPrefetcher.jittered(1000, 0.999));
+    }
+
+    @Test
+    void backgroundRefreshTest() throws InterruptedException {
+        TagListCache cache = new TagListCache();
+        AtomicInteger fetches = new AtomicInteger();
+        TagPrefetcher prefetcher = new TagPrefetcher((url, account, pageSize) -> {
+            fetches.incrementAndGet();
+            return new TagList(Collections.singletonList("1." + fetches.get()), null, cache.now());
+        }, cache);
+        try {
+            prefetcher.track("http://xxx/v2/a/tags/list", null, 0, 20);
+            await(() -> fetches.get() >= 3);
+            assertNotNull(cache.getIfFresh("http://xxx/v2/a/tags/list", 1000));
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    void failedRefreshIsRetriedTest() throws InterruptedException {
+        AtomicInteger fetches = new AtomicInteger();
+        TagPrefetcher prefetcher = new TagPrefetcher((url, account, pageSize) -> {
+            fetches.incrementAndGet();
+            throw new IOException("503");
+        }, new TagListCache());
+        try {
+            prefetcher.track("http://xxx/v2/a/tags/list", null, 0, 20);
+            await(() -> fetches.get() >= 2);
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    void idleImageIsDroppedTest() throws InterruptedException {
+        AtomicLong now = new AtomicLong(1);
+        TagListCache cache = new TagListCache(10, now::get);
+        AtomicInteger fetches = new AtomicInteger();
+        TagPrefetcher prefetcher = new TagPrefetcher((url, account, pageSize) -> {
+            fetches.incrementAndGet();
+            return new TagList(Collections.emptyList(), null, now.get());
+        }, cache, now::get);
+        try {
+            prefetcher.track("http://xxx/v2/a/tags/list", null, 0, 20);
+            await(() -> fetches.get() >= 1);
+            assertTrue(prefetcher.isTracked("http://xxx/v2/a/tags/list"));
+
+            now.addAndGet(TagPrefetcher.IDLE_INTERVALS * 20 + 1);
+            await(() -> !prefetcher.isTracked("http://xxx/v2/a/tags/list"));
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    void catalogScanTest() throws InterruptedException {
+        AtomicInteger scans = new AtomicInteger();
+        TagPrefetcher prefetcher = new TagPrefetcher((url, account, pageSize) -> null, new TagListCache());
+        try {
+            prefetcher.trackCatalog("http://xxx/v2/_catalog", null, 20, () -> {
+                scans.incrementAndGet();
+                return new CatalogScan(0, 0, 0, 0);
+            });
+            prefetcher.trackCatalog("http://xxx/v2/_catalog", null, 20, () -> {
+                scans.incrementAndGet();
+                return new CatalogScan(0, 0, 0, 0);
+            });
+            assertTrue(prefetcher.isScanned("http://xxx/v2/_catalog"));
+            await(() -> scans.get() >= 2);
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    void failedCatalogScanBacksOffTest() {
+        assertEquals(RegistryThrottle.MIN_BACKOFF_MILLIS, TagPrefetcher.retryDelay(20, 1));
+        assertEquals(2 * RegistryThrottle.MIN_BACKOFF_MILLIS, TagPrefetcher.retryDelay(20, 2));
+        assertEquals(RegistryThrottle.MAX_BACKOFF_MILLIS, TagPrefetcher.retryDelay(20, 30));
+        // Never more often than a scan that worked.
+        assertEquals(3600000, TagPrefetcher.retryDelay(3600000, 1));
+    }
+
+    @Test
+    void priorityTest() {
+        TagPrefetcher prefetcher = new TagPrefetcher((url, account, pageSize) -> null, new TagListCache());
+        TagPrefetcher.Image older = prefetcher.new Image("a");
+        TagPrefetcher.Image newer = prefetcher.new Image("b");
+        older.polledAt = 1;
+        newer.polledAt = 2;
+        assertTrue(newer.compareTo(older) < 0);
+        assertTrue(older.compareTo(newer) > 0);
+    }
+}
@@ -0,0 +1,68 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagVersionComparatorTests {
+
+    private static int sign(int value) {
+        return Integer.compare(value, 0);
+    }
+
+    private static int expandNumsOrder(String first, String second) {
+        return sign(PackageRepositoryPoller.expandNums(first).compareTo(PackageRepositoryPoller.expandNums(second)));
+    }
+
+    private static String randomTag(Random random) {
+        String alphabet = ".-_abcXYZ";
+        StringBuilder tag = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            if (random.nextInt(4) == 0) {
+                // expandNums only handles numbers up to six digits correctly
+                String number = String.valueOf(random.nextInt(1000000));
+                tag.append(random.nextBoolean() ? "0" + number : number);
+            }
+            if (i < length - 1 || random.nextBoolean()) {
+                tag.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+        }
+        return tag.toString();
+    }
+
+    @Test
+    void sameOrderAsExpandNumsTest() {
+        Random random = new Random(4711);
+        for (int i = 0; i < 100000; i++) {
+            String first = randomTag(random);
+            // Shared prefixes make the comparison go past the first character.
+            String second = random.nextBoolean() ? randomTag(random) : first.substring(0, first.length() / 2) + "." + randomTag(random);
+            assertEquals(
+                    expandNumsOrder(first, second),
+                    sign(TagVersionComparator.INSTANCE.compare(first, second)),
+                    first + " <=> " + second);
+        }
+    }
+
+    @Test
+    void numbersTest() {
+        TagVersionComparator comparator = TagVersionComparator.INSTANCE;
+        assertTrue(comparator.compare("1.100", "1.11") > 0);
+        assertTrue(comparator.compare("1.2", "1.11") < 0);
+        assertEquals(0, comparator.compare("1.02", "1.2"));
+        assertTrue(comparator.compare("1.0", "1.0-rc1") < 0);
+        assertTrue(comparator.compare("1.0", "1.0.1") < 0);
+        assertTrue(comparator.compare("1.0a", "1.0.1") > 0);
+    }
+
+    @Test
+    void longNumbersTest() {
+        TagVersionComparator comparator = TagVersionComparator.INSTANCE;
+        assertTrue(comparator.compare("build-1000000", "build-999999") > 0);
+        assertTrue(comparator.compare("20171018123456", "20171018123457") < 0);
+        assertTrue(comparator.compare("99999999999999999999", "100000000000000000000") < 0);
+    }
+}
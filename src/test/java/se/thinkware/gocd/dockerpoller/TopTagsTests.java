@@ -0,0 +1,61 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopTagsTests {
+
+    private static List<String> tagsOf(TopTags top) {
+        return top.getTop().stream().map(entry -> entry.tag).collect(Collectors.toList());
+    }
+
+    @Test
+    void sameAsSortingTest() {
+        Random random = new Random(17);
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            tags.add(random.nextInt(3) + "." + random.nextInt(30) + "." + random.nextInt(30));
+        }
+        for (TagOrder order : Arrays.asList(TagOrder.NATURAL, TagOrder.SEMVER, TagOrder.LEXICAL)) {
+            TopTags top = new TopTags(TagFilter.compile("^1\\."), order, 5);
+            tags.forEach(top);
+
+            List<String> sorted = tags.stream()
+                    .filter(tag -> tag.startsWith("1."))
+                    .sorted((first, second) -> order.compare(second, first))
+                    .limit(5)
+                    .collect(Collectors.toList());
+            assertEquals(sorted.stream().map(order::sortKey).collect(Collectors.toList()),
+                    top.getTop().stream().map(entry -> entry.sortKey).collect(Collectors.toList()));
+            assertEquals(tags.stream().filter(tag -> tag.startsWith("1.")).count(), top.getMatching());
+        }
+    }
+
+    @Test
+    void sameAsSelectorTest() {
+        List<String> tags = Arrays.asList("1.2", "1.02", "1.10", "0.9", "1.010", "1.3");
+        TopTags top = new TopTags(tag -> true, TagOrder.NATURAL, 4);
+        LatestTagSelector selector = new LatestTagSelector(tag -> true, 4);
+        tags.forEach(top);
+        tags.forEach(selector);
+
+        assertEquals(Arrays.asList("1.010", "1.10", "1.3", "1.02"), tagsOf(top));
+        assertEquals(selector.getCandidates(), tagsOf(top));
+    }
+
+    @Test
+    void fewerTagsThanCountTest() {
+        TopTags top = new TopTags(tag -> !tag.equals("latest"), TagOrder.SEMVER, 10);
+        Arrays.asList("1.0.0", "latest", "1.0.0-rc.1").forEach(top);
+
+        assertEquals(Arrays.asList("1.0.0", "1.0.0-rc.1"), tagsOf(top));
+        assertThrows(IllegalArgumentException.class, () -> new TopTags(tag -> true, TagOrder.NATURAL, 0));
+    }
+}
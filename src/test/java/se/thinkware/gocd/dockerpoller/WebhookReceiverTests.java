@@ -0,0 +1,151 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.testing.http.MockHttpTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookReceiverTests {
+
+    private static final String REGISTRY_PUSH = "{\"events\":["
+            + "{\"action\":\"push\",\"target\":{\"mediaType\":\"application/vnd.docker.distribution.manifest.v2+json\","
+            + "\"repository\":\"lib/a\",\"tag\":\"1.2\",\"digest\":\"sha256:1234\"},\"request\":{\"host\":\"registry:5000\"}},"
+            + "{\"action\":\"push\",\"target\":{\"repository\":\"lib/a\",\"digest\":\"sha256:5678\"}},"
+            + "{\"action\":\"pull\",\"target\":{\"repository\":\"lib/a\",\"tag\":\"1.1\"}}"
+            + "]}";
+
+    private static final String HARBOR_DELETE = "{\"type\":\"DELETE_ARTIFACT\",\"occur_at\":1586922308,"
+            + "\"event_data\":{\"resources\":[{\"digest\":\"sha256:1234\",\"tag\":\"1.2\",\"resource_url\":\"harbor.example.com/lib/a:1.2\"}],"
+            + "\"repository\":{\"name\":\"a\",\"namespace\":\"lib\",\"repo_full_name\":\"lib/a\"}}}";
+
+    private final List<TagEvent> events = new CopyOnWriteArrayList<>();
+    private WebhookReceiver receiver;
+
+    @BeforeEach
+    void start() throws IOException {
+        receiver = new WebhookReceiver(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), "s3cret", events::add);
+        receiver.start();
+    }
+
+    @AfterEach
+    void stop() {
+        receiver.stop();
+    }
+
+    // A stand-in for the registry's notification sender.
+    private int send(String method, String header, String value, String body) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + receiver.getPort() + "/webhook");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (header != null) {
+            connection.setRequestProperty(header, value);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/vnd.docker.distribution.events.v1+json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    @Test
+    void registryNotificationTest() throws IOException {
+        assertEquals(202, send("POST", "Authorization", "Bearer s3cret", REGISTRY_PUSH));
+
+        assertEquals(1, events.size());
+        TagEvent event = events.get(0);
+        assertEquals("registry:5000", event.getHost());
+        assertEquals("lib/a", event.getRepository());
+        assertEquals("1.2", event.getTag());
+        assertEquals("sha256:1234", event.getDigest());
+        assertFalse(event.isDeleted());
+    }
+
+    @Test
+    void harborTest() throws IOException {
+        assertEquals(202, send("POST", "Authorization", "s3cret", HARBOR_DELETE));
+
+        assertEquals(1, events.size());
+        TagEvent event = events.get(0);
+        assertEquals("harbor.example.com", event.getHost());
+        assertEquals("lib/a", event.getRepository());
+        assertEquals("1.2", event.getTag());
+        assertTrue(event.isDeleted());
+    }
+
+    @Test
+    void gitlabTokenTest() throws IOException {
+        assertEquals(202, send("POST", "X-Gitlab-Token", "s3cret", REGISTRY_PUSH));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void rejectedRequestsTest() throws IOException {
+        assertEquals(401, send("POST", null, null, REGISTRY_PUSH));
+        assertEquals(401, send("POST", "Authorization", "Bearer guess", REGISTRY_PUSH));
+        assertEquals(405, send("GET", "Authorization", "Bearer s3cret", null));
+        assertEquals(400, send("POST", "Authorization", "Bearer s3cret", "{\"events\":"));
+        assertEquals(400, send("POST", "Authorization", "Bearer s3cret", "{\"hello\":\"world\"}"));
+        assertEquals(400, send("POST", "Authorization", "Bearer s3cret",
+                "{\"events\":[{\"action\":\"push\",\"target\":{\"tag\":\"1.2\"}}]}"));
+        assertEquals(400, send("POST", "Authorization", "Bearer s3cret",
+                "{\"type\":\"PUSH_ARTIFACT\",\"event_data\":{\"resources\":[{\"tag\":\"1.2\"}]}}"));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void secretRequiredTest() {
+        assertThrows(IllegalArgumentException.class, () -> new WebhookReceiver(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), null, events::add));
+        assertThrows(IllegalArgumentException.class, () -> new WebhookReceiver(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), "", events::add));
+
+        System.setProperty(WebhookReceiver.PORT_PROPERTY, "0");
+        try {
+            assertNull(WebhookReceiver.configured(events::add));
+        } finally {
+            System.clearProperty(WebhookReceiver.PORT_PROPERTY);
+        }
+    }
+
+    @Test
+    void pollerShutdownStopsReceiverTest() throws IOException {
+        int port;
+        try (ServerSocket free = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = free.getLocalPort();
+        }
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(), new MockHttpTransport());
+        System.setProperty(WebhookReceiver.PORT_PROPERTY, Integer.toString(port));
+        System.setProperty(WebhookReceiver.SECRET_PROPERTY, "s3cret");
+        try {
+            poller.listenForWebhooks();
+        } finally {
+            System.clearProperty(WebhookReceiver.PORT_PROPERTY);
+            System.clearProperty(WebhookReceiver.SECRET_PROPERTY);
+        }
+        // On the loopback interface by default.
+        new Socket(InetAddress.getLoopbackAddress(), port).close();
+
+        poller.shutdown();
+        assertThrows(IOException.class, () -> new Socket(InetAddress.getLoopbackAddress(), port).close());
+    }
+}